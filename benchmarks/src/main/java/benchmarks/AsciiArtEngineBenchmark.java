@@ -0,0 +1,88 @@
+package benchmarks;
+
+import ascii_art.AsciiArt;
+import ascii_art.AsciiArtEngine;
+import ascii_art.ConversionSpec;
+import ascii_art.RenderMode;
+import image.Image;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.awt.*;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A whole conversion of an image that was not converted before: padding, the
+ * greyness (or, in edge mode, the Sobel pass) and the matching, in each render mode.
+ * @author Daniel, Inbar
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Djava.awt.headless=true", "-Xmx4g"})
+public class AsciiArtEngineBenchmark {
+    @Param({"cat.jpeg", "synthetic-4096"})
+    public String source;
+
+    @Param({"128", "1024"})
+    public int resolution;
+
+    @Param({"BRIGHTNESS", "EDGE", "DITHER"})
+    public RenderMode mode;
+
+    private final AsciiArtEngine engine = new AsciiArtEngine();
+    private Color[][] pixels;
+    private int width;
+    private int height;
+    private ConversionSpec spec;
+    private Image image;
+
+    /**
+     * Loads the pixels of the image and builds the char matcher.
+     * @throws IOException If the image could not be read.
+     */
+    @Setup(Level.Trial)
+    public void loadImage() throws IOException {
+        Image loaded = BenchmarkImages.load(source);
+        width = loaded.getWidth();
+        height = loaded.getHeight();
+        pixels = new Color[height][width];
+        for (int i = 0; i < height; i++) {
+            for (int j = 0; j < width; j++) {
+                pixels[i][j] = loaded.getPixel(i, j);
+            }
+        }
+        spec = new ConversionSpec(Math.min(resolution, width), "0123456789".toCharArray(), mode);
+        engine.precomputeMatcher(spec);
+    }
+
+    /**
+     * Wraps the pixels in a new image before each call, since images cache their conversions.
+     */
+    @Setup(Level.Invocation)
+    public void createImage() {
+        image = new Image(pixels, width, height);
+    }
+
+    /**
+     * Converts the image.
+     * @return The ASCII art.
+     */
+    @Benchmark
+    public AsciiArt convert() {
+        return engine.convert(image, spec);
+    }
+}
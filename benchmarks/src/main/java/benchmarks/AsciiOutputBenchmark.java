@@ -0,0 +1,102 @@
+package benchmarks;
+
+import ascii_output.ConsoleAsciiOutput;
+import ascii_output.HtmlAsciiOutput;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encoding ASCII art with both AsciiOutput implementations. The console output
+ * is measured writing to a discarding writer, so the terminal is not measured;
+ * the HTML output is measured both encoding and writing its file.
+ * @author Daniel, Inbar
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class AsciiOutputBenchmark {
+    private static final long SEED = 42;
+    private static final char FIRST_CHAR = ' ';
+    private static final int CHARS = '~' - ' ' + 1;
+
+    @Param({"128", "512", "2048"})
+    public int columns;
+
+    private char[][] art;
+    private Path htmlFile;
+    private final ConsoleAsciiOutput console = new ConsoleAsciiOutput();
+    private HtmlAsciiOutput html;
+
+    /**
+     * Builds random ASCII art of the given width, and half as many rows.
+     * @throws IOException If the HTML file could not be created.
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        Random random = new Random(SEED);
+        art = new char[columns / 2][columns];
+        for (char[] row : art) {
+            for (int x = 0; x < row.length; x++) {
+                row[x] = (char) (FIRST_CHAR + random.nextInt(CHARS));
+            }
+        }
+        htmlFile = Files.createTempFile("ascii-output", ".html");
+        html = new HtmlAsciiOutput(htmlFile.toString(), "Courier New");
+    }
+
+    /**
+     * Deletes the HTML file.
+     * @throws IOException If the file could not be deleted.
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(htmlFile);
+    }
+
+    /**
+     * Encodes the art in the console format.
+     * @throws IOException Never, the writer discards its input.
+     */
+    @Benchmark
+    public void consoleEncode() throws IOException {
+        console.write(art, Writer.nullWriter());
+    }
+
+    /**
+     * Encodes the art in the HTML format.
+     * @throws IOException Never, the writer discards its input.
+     */
+    @Benchmark
+    public void htmlEncode() throws IOException {
+        html.write(art, Writer.nullWriter());
+    }
+
+    /**
+     * Writes the art to an HTML file.
+     */
+    @Benchmark
+    public void htmlFile() {
+        html.out(art);
+    }
+}
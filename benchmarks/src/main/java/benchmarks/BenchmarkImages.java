@@ -0,0 +1,164 @@
+package benchmarks;
+
+import image.Image;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * The inputs of the benchmarks: the images in src/examples, and synthetic images
+ * of any size, named "synthetic-N" for an N x N image.
+ * Gigapixel-scale inputs such as synthetic-32768 need a large heap, e.g.
+ * -jvmArgsAppend -Xmx24g.
+ * @author Daniel, Inbar
+ */
+final class BenchmarkImages {
+    private static final String SYNTHETIC_PREFIX = "synthetic-";
+    private static final String EXAMPLES_PROPERTY = "examples.dir";
+    private static final String[] EXAMPLES_CANDIDATES = {"src/examples", "../src/examples"};
+    private static final int LEVELS = 16;
+    private static final int LEVEL_STEP = 17;
+    private static final Color[] PALETTE = new Color[LEVELS * LEVELS * LEVELS];
+
+    static {
+        for (int i = 0; i < PALETTE.length; i++) {
+            PALETTE[i] = new Color((i / (LEVELS * LEVELS)) * LEVEL_STEP,
+                    (i / LEVELS % LEVELS) * LEVEL_STEP, (i % LEVELS) * LEVEL_STEP);
+        }
+    }
+
+    /**
+     * Not instantiable.
+     */
+    private BenchmarkImages() {
+    }
+
+    /**
+     * Loads an input image.
+     * @param source The name of an example image, or "synthetic-N".
+     * @return The image.
+     * @throws IOException If the example image could not be read.
+     */
+    static Image load(String source) throws IOException {
+        if (isSynthetic(source))
+            return synthetic(sizeOf(source));
+        return new Image(example(source).toString());
+    }
+
+    /**
+     * Gets the path of an encoded input image, writing synthetic images to a temporary JPEG.
+     * @param source The name of an example image, or "synthetic-N".
+     * @return The path of the encoded image.
+     * @throws IOException If the synthetic image could not be written.
+     */
+    static Path encoded(String source) throws IOException {
+        if (!isSynthetic(source))
+            return example(source);
+        int size = sizeOf(source);
+        BufferedImage im = new BufferedImage(size, size, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                im.setRGB(x, y, colorAt(x, y, size).getRGB());
+            }
+        }
+        Path file = Files.createTempFile(source, ".jpeg");
+        file.toFile().deleteOnExit();
+        ImageIO.write(im, "jpeg", file.toFile());
+        return file;
+    }
+
+    /**
+     * Builds a synthetic image: gradients with concentric rings, so blocks differ in brightness.
+     * Pixels share a small palette of colors, so only the pixel references take memory.
+     * @param size The width and height of the image.
+     * @return The image.
+     */
+    static Image synthetic(int size) {
+        Color[][] pixels = new Color[size][size];
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                pixels[y][x] = colorAt(x, y, size);
+            }
+        }
+        return new Image(pixels, size, size);
+    }
+
+    /**
+     * Gets the color of a pixel of a synthetic image.
+     * @param x The column of the pixel.
+     * @param y The row of the pixel.
+     * @param size The size of the image.
+     * @return The color.
+     */
+    private static Color colorAt(int x, int y, int size) {
+        long dx = x - size / 2;
+        long dy = y - size / 2;
+        int ring = (int) (Math.sqrt(dx * dx + dy * dy) * LEVELS * 4 / size) % LEVELS;
+        int red = (int) ((long) x * LEVELS / size);
+        int green = (int) ((long) y * LEVELS / size);
+        return PALETTE[(red * LEVELS + green) * LEVELS + ring];
+    }
+
+    /**
+     * Lists the example images.
+     * @return The file names of the examples, sorted.
+     * @throws IOException If the examples directory could not be listed.
+     */
+    static List<String> examples() throws IOException {
+        try (Stream<Path> files = Files.list(examplesDirectory())) {
+            return files.map(file -> file.getFileName().toString())
+                    .filter(name -> name.matches("(?i).+\\.(jpe?g|png|gif|bmp)"))
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    /**
+     * Finds an example image.
+     * @param name The file name of the example.
+     * @return The path of the example.
+     */
+    private static Path example(String name) {
+        return examplesDirectory().resolve(name);
+    }
+
+    /**
+     * Finds the directory of the example images.
+     * @return The directory.
+     */
+    private static Path examplesDirectory() {
+        String dir = System.getProperty(EXAMPLES_PROPERTY);
+        if (dir != null)
+            return Path.of(dir);
+        for (String candidate : EXAMPLES_CANDIDATES) {
+            if (new File(candidate).isDirectory())
+                return Path.of(candidate);
+        }
+        throw new IllegalStateException("Cannot find the examples, set -D" + EXAMPLES_PROPERTY);
+    }
+
+    /**
+     * Checks whether a source names a synthetic image.
+     * @param source The source.
+     * @return True if it is synthetic.
+     */
+    private static boolean isSynthetic(String source) {
+        return source.startsWith(SYNTHETIC_PREFIX);
+    }
+
+    /**
+     * Gets the size of a synthetic image.
+     * @param source The source, "synthetic-N".
+     * @return N.
+     */
+    private static int sizeOf(String source) {
+        return Integer.parseInt(source.substring(SYNTHETIC_PREFIX.length()));
+    }
+}
@@ -0,0 +1,40 @@
+package benchmarks;
+
+import image_char_matching.CharConverter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Getting the glyph of a char: a lookup in the build-time glyph table for the
+ * printable ASCII chars, rasterizing with AWT for the others.
+ * @author Daniel, Inbar
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class CharConverterBenchmark {
+    @Param({" ", "0", "@", "W", "é", "Ж"})
+    public char c;
+
+    /**
+     * Gets the glyph of the char.
+     * @return The glyph.
+     */
+    @Benchmark
+    public boolean[][] convertToBoolArray() {
+        return CharConverter.convertToBoolArray(c);
+    }
+}
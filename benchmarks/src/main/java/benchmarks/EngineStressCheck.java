@@ -0,0 +1,99 @@
+package benchmarks;
+
+import ascii_art.AsciiArt;
+import ascii_art.AsciiArtEngine;
+import ascii_art.ConversionSpec;
+import image.Image;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Checks that one AsciiArtEngine gives identical output under contention.
+ * The reference output of every case is rendered sequentially, each on a fresh
+ * engine and fresh images. Then many threads convert random cases at the same
+ * time on a single shared engine and shared images, so they race on its caches,
+ * and every result is compared with the reference.
+ * Exits with status 1 if any result differs.
+ * @author Daniel, Inbar
+ */
+public class EngineStressCheck {
+    private static final String[] SOURCES = {"board.jpeg", "cat.jpeg", "cat2.jpg", "cat3.jpg"};
+    private static final int[] RESOLUTIONS = {4, 16, 32, 64, 128, 256};
+    private static final char[][] CHARSETS = {"0123456789".toCharArray(), allChars(), "@#.:- ".toCharArray()};
+    private static final int DEFAULT_THREADS = 32;
+    private static final int DEFAULT_CONVERSIONS_PER_THREAD = 50;
+    private static final long SEED = 42;
+
+    /**
+     * Runs the check.
+     * @param args Optional: the number of threads and of conversions per thread.
+     * @throws Exception If an image could not be read or a conversion failed.
+     */
+    public static void main(String[] args) throws Exception {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_THREADS;
+        int conversions = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_CONVERSIONS_PER_THREAD;
+
+        List<Image> images = new ArrayList<>();
+        List<ConversionSpec> specs = new ArrayList<>();
+        List<AsciiArt> expected = new ArrayList<>();
+        for (String source : SOURCES) {
+            Image image = BenchmarkImages.load(source);
+            for (int resolution : RESOLUTIONS) {
+                if (resolution > image.getWidth())
+                    continue;
+                for (char[] charset : CHARSETS) {
+                    ConversionSpec spec = new ConversionSpec(resolution, charset);
+                    images.add(image);
+                    specs.add(spec);
+                    expected.add(new AsciiArtEngine().convert(BenchmarkImages.load(source), spec));
+                }
+            }
+        }
+
+        AsciiArtEngine shared = new AsciiArtEngine();
+        AtomicInteger mismatches = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> workers = new ArrayList<>();
+        try (ExecutorService executor = Executors.newFixedThreadPool(threads)) {
+            for (int t = 0; t < threads; t++) {
+                Random random = new Random(SEED + t);
+                workers.add(executor.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < conversions; i++) {
+                        int c = random.nextInt(specs.size());
+                        if (!shared.convert(images.get(c), specs.get(c)).equals(expected.get(c)))
+                            mismatches.incrementAndGet();
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> worker : workers) {
+                worker.get();
+            }
+        }
+        System.out.printf("%d conversions of %d cases on %d threads, %d mismatches%n",
+                threads * conversions, specs.size(), threads, mismatches.get());
+        if (mismatches.get() > 0)
+            System.exit(1);
+    }
+
+    /**
+     * Builds the charset of all the printable ASCII chars.
+     * @return The chars.
+     */
+    private static char[] allChars() {
+        char[] chars = new char['~' - ' ' + 1];
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = (char) (' ' + i);
+        }
+        return chars;
+    }
+}
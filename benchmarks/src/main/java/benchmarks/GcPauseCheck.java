@@ -0,0 +1,72 @@
+package benchmarks;
+
+import ascii_art.AsciiArtEngine;
+import ascii_art.ConversionSpec;
+import image.Image;
+
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+
+/**
+ * Measures the garbage collections of a long-running service that converts large
+ * images at a high resolution: each round loads the image again, so its greyness is
+ * computed again, and converts it in full, as a preview and as viewports.
+ * Run it once on the heap and once with -Dascii.offHeapGrids=true to compare the
+ * collections, e.g. with -Xmx2g -XX:+UseG1GC and -Xlog:gc for the pauses one by one.
+ * @author Daniel, Inbar
+ */
+public class GcPauseCheck {
+    private static final String DEFAULT_SOURCE = "synthetic-4096";
+    private static final int DEFAULT_RESOLUTION = 2048;
+    private static final int DEFAULT_ROUNDS = 20;
+    private static final int PREVIEW_SAMPLES = 2;
+    private static final int VIEWPORT_SIZE = 512;
+    private static final int VIEWPORTS_PER_ROUND = 8;
+    private static final char[] CHARSET = "@#%*+=-:. ".toCharArray();
+
+    /**
+     * Runs the check.
+     * @param args Optional: the image, the resolution and the number of rounds.
+     * @throws IOException If the image could not be read.
+     */
+    public static void main(String[] args) throws IOException {
+        String source = args.length > 0 ? args[0] : DEFAULT_SOURCE;
+        int resolution = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_RESOLUTION;
+        int rounds = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_ROUNDS;
+        ConversionSpec spec = new ConversionSpec(resolution, CHARSET);
+        AsciiArtEngine engine = new AsciiArtEngine();
+        List<GarbageCollectorMXBean> collectors = ManagementFactory.getGarbageCollectorMXBeans();
+        long[] counts = new long[collectors.size()];
+        long[] times = new long[collectors.size()];
+        long checksum = 0;
+        long start = 0;
+        // the first round warms up, it is not measured
+        for (int round = -1; round < rounds; round++) {
+            if (round == 0) {
+                for (int i = 0; i < collectors.size(); i++) {
+                    counts[i] = collectors.get(i).getCollectionCount();
+                    times[i] = collectors.get(i).getCollectionTime();
+                }
+                start = System.nanoTime();
+            }
+            Image image = BenchmarkImages.load(source);
+            checksum += engine.convert(image, spec).hashCode();
+            checksum += engine.convertPreview(image, spec, PREVIEW_SAMPLES).hashCode();
+            for (int v = 0; v < VIEWPORTS_PER_ROUND; v++) {
+                int offset = v * VIEWPORT_SIZE / 4;
+                checksum += engine.convertViewport(image, spec, offset, offset, VIEWPORT_SIZE, VIEWPORT_SIZE)
+                        .hashCode();
+            }
+        }
+        double elapsed = (System.nanoTime() - start) / 1e6;
+        System.out.printf("%s at %d columns, %d rounds, off-heap grids %s: %.1f ms, checksum %x%n", source,
+                resolution, rounds, Boolean.getBoolean("ascii.offHeapGrids"), elapsed, checksum);
+        for (int i = 0; i < collectors.size(); i++) {
+            GarbageCollectorMXBean collector = collectors.get(i);
+            System.out.printf("  %s: %d collections, %d ms%n", collector.getName(),
+                    collector.getCollectionCount() - counts[i], collector.getCollectionTime() - times[i]);
+        }
+    }
+}
@@ -0,0 +1,473 @@
+package benchmarks;
+
+import ascii_art.AsciiArt;
+import ascii_art.AsciiArtEngine;
+import ascii_art.ConversionSpec;
+import ascii_art.RenderMode;
+import ascii_output.ConsoleAsciiOutput;
+import ascii_output.HtmlAsciiOutput;
+import ascii_output.JsonAsciiOutput;
+import ascii_output.TextAsciiOutput;
+import image.Image;
+import image.Luminance;
+
+import java.awt.*;
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Checks that conversions still give the same ASCII art, and are not slower or more
+ * wasteful than they were.
+ * Every image in src/examples is converted at every resolution, character set, render
+ * mode and luminance of a fixed matrix, and the chars of each case, one line per row,
+ * are compared byte for byte with its golden output in the golden directory. The console,
+ * HTML and JSON outputs, which encode in parallel chunks, must also give the same bytes as
+ * their sequential writers. Then each case is timed over
+ * a few runs on a fresh engine and a fresh copy of its image, so the greyness and edges
+ * are computed every time, and its fastest wall time and median allocated bytes are compared
+ * with baseline.csv in the same directory. A case regresses if either exceeds the baseline
+ * by more than the threshold, a fraction set by -Dgolden.threshold, and by more than
+ * what is noise at that size.
+ * The speed of a machine drifts between runs, so each run also times a fixed workload
+ * that does not use the converter, and the wall times of the baseline are scaled by how
+ * much slower or faster it ran than when the baseline was recorded. The baseline still
+ * holds only on the machine that recorded it; record it again on a new machine, from a
+ * tree whose outputs match. A case that is slower than its baseline is timed again, up
+ * to RETRIES more times with the fixed workload, and regresses only if it stays slower.
+ * Exits with status 1 if any output differs or any case regressed.
+ * @author Daniel, Inbar
+ */
+public class GoldenCheck {
+    private static final String GOLDEN_PROPERTY = "golden.dir";
+    private static final String[] GOLDEN_CANDIDATES = {"benchmarks/golden", "golden"};
+    private static final String THRESHOLD_PROPERTY = "golden.threshold";
+    private static final double DEFAULT_THRESHOLD = 0.25;
+    private static final String BASELINE = "baseline.csv";
+    private static final int[] RESOLUTIONS = {4, 16, 32, 64, 128, 256};
+    private static final Map<String, char[]> CHARSETS = new LinkedHashMap<>();
+    private static final int RUNS = 5;
+    private static final int RETRIES = 2;
+    // differences below these are noise, whatever the threshold
+    private static final long NOISE_NANOS = 2_000_000;
+    private static final long NOISE_BYTES = 64 * 1024;
+    // the name of the fixed workload in the baseline, and its size
+    private static final String CALIBRATION = "calibration";
+    private static final int CALIBRATION_PIXELS = 1 << 20;
+    private static final int CALIBRATION_PASSES = 8;
+
+    static {
+        CHARSETS.put("digits", "0123456789".toCharArray());
+        CHARSETS.put("printable", printableChars());
+        CHARSETS.put("shades", "@#.:- ".toCharArray());
+    }
+
+    /**
+     * Runs the check.
+     * @param args Optional: "check" (the default) to compare with the golden outputs and
+     *             the baseline, "update" to write the golden outputs and the baseline from
+     *             this tree, or "baseline" to record only the baseline, once the outputs match.
+     * @throws IOException If an image, golden output or the baseline could not be read or written.
+     */
+    public static void main(String[] args) throws IOException {
+        String command = args.length > 0 ? args[0] : "check";
+        if (!command.equals("check") && !command.equals("update") && !command.equals("baseline")) {
+            System.err.println("usage: GoldenCheck [check|update|baseline]");
+            System.exit(2);
+        }
+        Path golden = goldenDirectory();
+        double threshold = Double.parseDouble(System.getProperty(THRESHOLD_PROPERTY,
+                String.valueOf(DEFAULT_THRESHOLD)));
+
+        List<Case> cases = cases();
+        int failures = 0;
+        Path encoded = Files.createTempFile("golden", ".out");
+        for (Case c : cases) {
+            AsciiArt art = new AsciiArtEngine().convert(c.image, c.spec);
+            for (String output : differentEncodings(art.toCharArray(), encoded)) {
+                System.out.printf("%s: the %s output differs from its sequential writer%n", c.name, output);
+                failures++;
+            }
+            byte[] output = render(art);
+            Path file = golden.resolve(c.name + ".txt");
+            if (command.equals("update")) {
+                Files.createDirectories(golden);
+                Files.write(file, output);
+            } else if (!Files.exists(file)) {
+                System.out.printf("%s: no golden output%n", c.name);
+                failures++;
+            } else if (!Arrays.equals(Files.readAllBytes(file), output)) {
+                System.out.printf("%s: output differs from %s%n", c.name, file);
+                failures++;
+            }
+        }
+        Files.delete(encoded);
+        if (command.equals("baseline") && failures > 0) {
+            System.out.println("The outputs differ from the golden outputs, the baseline was not recorded");
+            System.exit(1);
+        }
+
+        long calibration = measure(cases);
+        Path baselineFile = golden.resolve(BASELINE);
+        if (command.equals("check")) {
+            Map<String, long[]> baseline = readBaseline(baselineFile);
+            long[] baseCalibration = baseline.get(CALIBRATION);
+            double speed = baseCalibration == null ? 1 : (double) calibration / baseCalibration[0];
+            System.out.printf("The machine runs at %.2f times the time of the baseline%n", speed);
+            List<Case> slow = slowCases(cases, baseline, speed, threshold);
+            for (int retry = 0; retry < RETRIES && !slow.isEmpty(); retry++) {
+                // a case that only a busy moment of the machine slowed down is fast this time,
+                // or the machine is as slow for the fixed workload
+                long retryCalibration = measure(slow);
+                if (baseCalibration != null)
+                    speed = Math.max(speed, (double) retryCalibration / baseCalibration[0]);
+                slow = slowCases(slow, baseline, speed, threshold);
+            }
+            for (Case c : cases) {
+                long[] base = baseline.get(c.name);
+                if (base == null) {
+                    System.out.printf("%s: not in the baseline%n", c.name);
+                    continue;
+                }
+                if (slow.contains(c)) {
+                    System.out.printf("%s: %.2f ms, baseline %.2f ms at this speed%n", c.name, c.nanos / 1e6,
+                            base[0] * speed / 1e6);
+                    failures++;
+                }
+                if (regressed(c.bytes, base[1], threshold, NOISE_BYTES)) {
+                    System.out.printf("%s: %d bytes allocated, baseline %d%n", c.name, c.bytes, base[1]);
+                    failures++;
+                }
+            }
+        } else {
+            writeBaseline(baselineFile, cases, calibration);
+        }
+
+        long nanos = 0;
+        long bytes = 0;
+        for (Case c : cases) {
+            nanos += c.nanos;
+            bytes += c.bytes;
+        }
+        System.out.printf("%s: %d cases, %.1f ms and %.1f MB allocated in total, %d failures%n",
+                command, cases.size(), nanos / 1e6, bytes / 1e6, failures);
+        if (failures > 0)
+            System.exit(1);
+    }
+
+    /**
+     * One conversion of the matrix, and its measurements.
+     */
+    private static final class Case {
+        private final String name;
+        private final Image image;
+        private final ConversionSpec spec;
+        private long nanos = Long.MAX_VALUE;
+        private long bytes;
+
+        /**
+         * constructor
+         * @param name The name of the case, which names its golden output.
+         * @param image The image, whose pixels are copied for each timed run.
+         * @param spec The conversion.
+         */
+        private Case(String name, Image image, ConversionSpec spec) {
+            this.name = name;
+            this.image = image;
+            this.spec = spec;
+        }
+    }
+
+    /**
+     * Builds the matrix of cases, skipping resolutions wider than an image.
+     * @return The cases.
+     * @throws IOException If an example image could not be read.
+     */
+    private static List<Case> cases() throws IOException {
+        List<Case> cases = new ArrayList<>();
+        for (String example : BenchmarkImages.examples()) {
+            Image image = BenchmarkImages.load(example);
+            for (int resolution : RESOLUTIONS) {
+                if (resolution > image.getWidth())
+                    continue;
+                for (Map.Entry<String, char[]> charset : CHARSETS.entrySet()) {
+                    for (RenderMode mode : RenderMode.values()) {
+                        for (Luminance luminance : Luminance.values()) {
+                            String name = example + "-" + resolution + "-" + charset.getKey() + "-" +
+                                    mode.getLabel() + "-" + luminance.getLabel();
+                            cases.add(new Case(name, image,
+                                    new ConversionSpec(resolution, charset.getValue(), mode, luminance)));
+                        }
+                    }
+                }
+            }
+        }
+        return cases;
+    }
+
+    /**
+     * Finds the cases whose time regressed from the baseline.
+     * @param cases The measured cases.
+     * @param baseline The baseline, by case name.
+     * @param speed The time of the fixed workload relative to the baseline.
+     * @param threshold The fraction of the baseline a time may exceed it by.
+     * @return The cases that regressed.
+     */
+    private static List<Case> slowCases(List<Case> cases, Map<String, long[]> baseline, double speed,
+                                        double threshold) {
+        List<Case> slow = new ArrayList<>();
+        for (Case c : cases) {
+            long[] base = baseline.get(c.name);
+            if (base != null && regressed(c.nanos, Math.round(base[0] * speed), threshold, NOISE_NANOS))
+                slow.add(c);
+        }
+        return slow;
+    }
+
+    /**
+     * Times cases over RUNS runs, keeping the fastest time of each, also across calls, since
+     * pauses of the machine and of the collector only ever slow a run down, and the median of
+     * the allocated bytes. The runs go round the cases, so a pause slows one run of many cases
+     * rather than every run of one.
+     * Each run starts with the fixed workload, which is timed the same way.
+     * @param cases The cases, whose outputs were rendered once already, which warmed the JIT.
+     * @return The fastest time of the fixed workload, in nanoseconds.
+     */
+    private static long measure(List<Case> cases) {
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        Map<Image, Color[][]> pixels = new HashMap<>();
+        for (Case c : cases)
+            pixels.computeIfAbsent(c.image, GoldenCheck::pixelsOf);
+        long[][] nanos = new long[cases.size()][RUNS];
+        long[][] bytes = new long[cases.size()][RUNS];
+        Color[] workload = new Color[CALIBRATION_PIXELS];
+        for (int i = 0; i < workload.length; i++)
+            workload[i] = new Color(i * 0x9E3779B9 >>> 8);
+        long calibration = Long.MAX_VALUE;
+        for (int run = 0; run < RUNS; run++) {
+            calibration = Math.min(calibration, calibrate(workload));
+            for (int i = 0; i < cases.size(); i++) {
+                Case c = cases.get(i);
+                Image copy = new Image(pixels.get(c.image), c.image.getWidth(), c.image.getHeight());
+                AsciiArtEngine engine = new AsciiArtEngine();
+                // the edges are found on the common pool, so the allocations of every thread count
+                long allocated = threads.getTotalThreadAllocatedBytes();
+                long start = System.nanoTime();
+                engine.convert(copy, c.spec);
+                nanos[i][run] = System.nanoTime() - start;
+                bytes[i][run] = threads.getTotalThreadAllocatedBytes() - allocated;
+            }
+        }
+        for (int i = 0; i < cases.size(); i++) {
+            Case c = cases.get(i);
+            c.nanos = Math.min(c.nanos, Arrays.stream(nanos[i]).min().orElseThrow());
+            c.bytes = median(bytes[i]);
+        }
+        return calibration;
+    }
+
+    /**
+     * Times the fixed workload: summing a weighted mean of the channels of scattered
+     * pixels, like the greyness of an image, but without the converter.
+     * @param workload The pixels.
+     * @return The time, in nanoseconds.
+     */
+    private static long calibrate(Color[] workload) {
+        long start = System.nanoTime();
+        long sum = 0;
+        for (int pass = 0; pass < CALIBRATION_PASSES; pass++) {
+            for (Color pixel : workload) {
+                int rgb = pixel.getRGB();
+                sum += 54 * ((rgb >> 16) & 0xFF) + 183 * ((rgb >> 8) & 0xFF) + 19 * (rgb & 0xFF);
+            }
+        }
+        long nanos = System.nanoTime() - start;
+        // so the JIT cannot drop the loop
+        if (sum == 42)
+            System.out.print("");
+        return nanos;
+    }
+
+    /**
+     * Checks whether a measurement regressed from its baseline.
+     * @param current The measurement.
+     * @param baseline The baseline.
+     * @param threshold The fraction of the baseline it may exceed it by.
+     * @param noise The difference that is always allowed.
+     * @return True if it regressed.
+     */
+    private static boolean regressed(long current, long baseline, double threshold, long noise) {
+        return current > baseline * (1 + threshold) && current - baseline > noise;
+    }
+
+    /**
+     * Finds the outputs whose encoding of ASCII art differs from that of their write
+     * method through a sequential writer in the same charset.
+     * @param chars The ASCII art.
+     * @param file A file to write the file outputs to.
+     * @return The names of the outputs that differ.
+     * @throws IOException If the file could not be read.
+     */
+    private static List<String> differentEncodings(char[][] chars, Path file) throws IOException {
+        List<String> different = new ArrayList<>();
+        Charset charset = Charset.defaultCharset();
+        TextAsciiOutput[] files = {new HtmlAsciiOutput(file.toString(), "Courier New"),
+                new JsonAsciiOutput(file.toString())};
+        for (TextAsciiOutput output : files) {
+            output.out(chars);
+            if (!Arrays.equals(Files.readAllBytes(file), sequential(output, chars, charset)))
+                different.add(output.getClass().getSimpleName());
+        }
+        PrintStream stdout = System.out;
+        ByteArrayOutputStream console = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(console, false, charset));
+        try {
+            new ConsoleAsciiOutput().out(chars);
+        } finally {
+            System.setOut(stdout);
+        }
+        if (!Arrays.equals(console.toByteArray(), sequential(new ConsoleAsciiOutput(), chars, charset)))
+            different.add(ConsoleAsciiOutput.class.getSimpleName());
+        return different;
+    }
+
+    /**
+     * Encodes ASCII art with the write method of an output, through a sequential writer.
+     * @param output The output.
+     * @param chars The ASCII art.
+     * @param charset The charset of the writer.
+     * @return The bytes.
+     * @throws IOException Never, the bytes are kept in memory.
+     */
+    private static byte[] sequential(TextAsciiOutput output, char[][] chars, Charset charset) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(bytes, charset))) {
+            output.write(chars, writer);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Renders ASCII art as the bytes of its golden output: the chars of each row and a newline.
+     * @param art The ASCII art.
+     * @return The bytes, in UTF-8.
+     */
+    private static byte[] render(AsciiArt art) {
+        StringBuilder text = new StringBuilder(art.getRows() * (art.getColumns() + 1));
+        for (int row = 0; row < art.getRows(); row++) {
+            for (int column = 0; column < art.getColumns(); column++) {
+                text.append(art.charAt(row, column));
+            }
+            text.append('\n');
+        }
+        return text.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Reads the baseline.
+     * @param file The baseline file.
+     * @return The wall time and allocated bytes of each case, by name; empty if there is no baseline.
+     * @throws IOException If the baseline could not be read.
+     */
+    private static Map<String, long[]> readBaseline(Path file) throws IOException {
+        Map<String, long[]> baseline = new HashMap<>();
+        if (!Files.exists(file)) {
+            System.out.printf("No baseline at %s, only the outputs were checked%n", file);
+            return baseline;
+        }
+        for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+            if (line.startsWith("#") || line.startsWith("case,") || line.isBlank())
+                continue;
+            String[] fields = line.split(",");
+            baseline.put(fields[0], new long[]{Long.parseLong(fields[1]), Long.parseLong(fields[2])});
+        }
+        return baseline;
+    }
+
+    /**
+     * Writes the measurements of the cases as the baseline.
+     * @param file The baseline file.
+     * @param cases The measured cases.
+     * @param calibration The time of the fixed workload.
+     * @throws IOException If the baseline could not be written.
+     */
+    private static void writeBaseline(Path file, List<Case> cases, long calibration) throws IOException {
+        List<String> lines = new ArrayList<>();
+        lines.add(String.format("# recorded with Java %s on %d processors, %d runs per case",
+                System.getProperty("java.version"), Runtime.getRuntime().availableProcessors(), RUNS));
+        lines.add("case,nanos,bytes");
+        lines.add(CALIBRATION + "," + calibration + ",0");
+        for (Case c : cases)
+            lines.add(c.name + "," + c.nanos + "," + c.bytes);
+        Files.createDirectories(file.getParent());
+        Files.write(file, lines, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Finds the directory of the golden outputs and the baseline.
+     * @return The directory.
+     */
+    private static Path goldenDirectory() {
+        String dir = System.getProperty(GOLDEN_PROPERTY);
+        if (dir != null)
+            return Path.of(dir);
+        for (String candidate : GOLDEN_CANDIDATES) {
+            if (new File(candidate).isDirectory())
+                return Path.of(candidate);
+        }
+        return Path.of(GOLDEN_CANDIDATES[0]);
+    }
+
+    /**
+     * Copies the pixels of an image, for fresh copies of it that share them.
+     * @param image The image.
+     * @return The pixels, by row.
+     */
+    private static Color[][] pixelsOf(Image image) {
+        Color[][] pixels = new Color[image.getHeight()][image.getWidth()];
+        for (int i = 0; i < image.getHeight(); i++) {
+            for (int j = 0; j < image.getWidth(); j++) {
+                pixels[i][j] = image.getPixel(i, j);
+            }
+        }
+        return pixels;
+    }
+
+    /**
+     * Finds the median of measurements.
+     * @param values The measurements; sorted in place.
+     * @return The median.
+     */
+    private static long median(long[] values) {
+        Arrays.sort(values);
+        return values[values.length / 2];
+    }
+
+    /**
+     * Builds the charset of all the printable ASCII chars.
+     * @return The chars.
+     */
+    private static char[] printableChars() {
+        char[] chars = new char['~' - ' ' + 1];
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = (char) (' ' + i);
+        }
+        return chars;
+    }
+}
@@ -0,0 +1,54 @@
+package benchmarks;
+
+import image.Image;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decoding image files into an Image.
+ * @author Daniel, Inbar
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class ImageDecodeBenchmark {
+    @Param({"board.jpeg", "cat.jpeg", "cat2.jpg", "cat3.jpg", "synthetic-4096"})
+    public String source;
+
+    private String path;
+
+    /**
+     * Finds, or writes, the encoded image.
+     * @throws IOException If the image could not be written.
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        path = BenchmarkImages.encoded(source).toString();
+    }
+
+    /**
+     * Decodes the image.
+     * @return The image.
+     * @throws IOException If the image could not be read.
+     */
+    @Benchmark
+    public Image decode() throws IOException {
+        return new Image(path);
+    }
+}
@@ -0,0 +1,78 @@
+package benchmarks;
+
+import image.Image;
+import image.ImageRenderer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Padding an image (the ImageRenderer constructor) and computing the greyness of
+ * its blocks at several resolutions (setResolution).
+ * @author Daniel, Inbar
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class ImageRendererBenchmark {
+    @Param({"cat.jpeg", "cat2.jpg", "synthetic-4096"})
+    public String source;
+
+    @Param({"16", "64", "128", "512"})
+    public int resolution;
+
+    private Image image;
+    private ImageRenderer renderer;
+
+    /**
+     * Loads the image.
+     * @throws IOException If the image could not be read.
+     */
+    @Setup(Level.Trial)
+    public void loadImage() throws IOException {
+        image = BenchmarkImages.load(source);
+    }
+
+    /**
+     * Creates a new renderer before each call, since renderers cache each resolution.
+     */
+    @Setup(Level.Invocation)
+    public void createRenderer() {
+        renderer = new ImageRenderer(image);
+    }
+
+    /**
+     * Pads the image.
+     * @return The renderer.
+     */
+    @Benchmark
+    public ImageRenderer construct() {
+        return new ImageRenderer(image);
+    }
+
+    /**
+     * Computes the greyness of the blocks of the resolution.
+     * @return The greyness values.
+     */
+    @Benchmark
+    public ArrayList<ArrayList<Double>> setResolution() {
+        renderer.setResolution(resolution);
+        return renderer.getGrayDividedImages();
+    }
+}
@@ -0,0 +1,127 @@
+package benchmarks;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * A synthetic client for load testing the RenderServer locally.
+ * It sends a fixed number of requests from a number of concurrent virtual
+ * threads, and prints the throughput, latency percentiles and status counts.
+ * @author Daniel, Inbar
+ */
+public class LoadTestClient {
+    private static final double NANOS_PER_MILLI = 1_000_000.0;
+    private static final double NANOS_PER_SECOND = 1_000_000_000.0;
+    private static final int[] PERCENTILES = {50, 90, 99};
+
+    private final HttpClient client = HttpClient.newBuilder()
+            .executor(Executors.newVirtualThreadPerTaskExecutor()).build();
+    private final URI uri;
+    private final byte[] upload;
+
+    /**
+     * Constructs a client.
+     * @param uri The render URI, including its query parameters.
+     * @param upload The image to upload with POST, or null to send GET requests.
+     */
+    public LoadTestClient(URI uri, byte[] upload) {
+        this.uri = uri;
+        this.upload = upload;
+    }
+
+    /**
+     * Runs the load test and prints its results.
+     * @param concurrency The number of requests in flight at the same time.
+     * @param requests The total number of requests.
+     * @throws InterruptedException If interrupted while waiting for the requests.
+     * @throws IllegalStateException If a worker failed, so not every request was measured.
+     */
+    public void run(int concurrency, int requests) throws InterruptedException {
+        long[] latencies = new long[requests];
+        Map<Integer, Integer> statuses = new TreeMap<>();
+        List<Future<?>> workers = new ArrayList<>();
+        long start = System.nanoTime();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int worker = 0; worker < concurrency; worker++) {
+                int first = worker;
+                workers.add(executor.submit(() -> {
+                    for (int i = first; i < requests; i += concurrency) {
+                        long sent = System.nanoTime();
+                        int status = send();
+                        latencies[i] = System.nanoTime() - sent;
+                        synchronized (statuses) {
+                            statuses.merge(status, 1, Integer::sum);
+                        }
+                    }
+                }));
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        for (Future<?> worker : workers) {
+            try {
+                worker.get();
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("A worker failed, not every request was measured.", e.getCause());
+            }
+        }
+
+        Arrays.sort(latencies);
+        System.out.printf("%d requests, %d concurrent, %.2f s, %.1f requests/s%n",
+                requests, concurrency, elapsed / NANOS_PER_SECOND, requests * NANOS_PER_SECOND / elapsed);
+        for (int percentile : PERCENTILES) {
+            int index = Math.min(requests - 1, (int) Math.ceil(requests * percentile / 100.0) - 1);
+            System.out.printf("p%d latency: %.1f ms%n", percentile, latencies[index] / NANOS_PER_MILLI);
+        }
+        System.out.println("statuses: " + statuses);
+    }
+
+    /**
+     * Sends a single request, reading its whole response.
+     * @return The HTTP status, or -1 if the request failed.
+     */
+    private int send() {
+        HttpRequest.Builder request = HttpRequest.newBuilder(uri);
+        if (upload != null)
+            request.POST(HttpRequest.BodyPublishers.ofByteArray(upload));
+        try {
+            return client.send(request.build(), HttpResponse.BodyHandlers.discarding()).statusCode();
+        } catch (IOException e) {
+            return -1;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return -1;
+        }
+    }
+
+    /**
+     * Runs a load test.
+     * @param args The render URI (e.g. "http://localhost:8080/render?path=cat.jpeg&res=128"),
+     *             the number of concurrent requests, the total number of requests,
+     *             and optionally an image file to upload with POST instead of GET.
+     * @throws IOException If the upload file could not be read.
+     * @throws InterruptedException If interrupted while waiting for the requests.
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 3) {
+            System.err.println("Usage: LoadTestClient <uri> <concurrency> <requests> [upload-file]");
+            System.exit(1);
+        }
+        byte[] upload = args.length > 3 ? Files.readAllBytes(Path.of(args[3])) : null;
+        new LoadTestClient(URI.create(args[0]), upload)
+                .run(Integer.parseInt(args[1]), Integer.parseInt(args[2]));
+    }
+}
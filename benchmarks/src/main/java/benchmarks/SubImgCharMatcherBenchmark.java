@@ -0,0 +1,84 @@
+package benchmarks;
+
+import image_char_matching.SubImgCharMatcher;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building a SubImgCharMatcher and matching brightness values to chars.
+ * The brightness of each char is rendered once per process, so after warmup
+ * construct measures building the sorted maps; CharConverterBenchmark measures
+ * the rendering itself.
+ * @author Daniel, Inbar
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class SubImgCharMatcherBenchmark {
+    private static final int BRIGHTNESS_VALUES = 1024;
+    private static final long SEED = 42;
+
+    @Param({"digits", "all"})
+    public String charset;
+
+    private char[] chars;
+    private SubImgCharMatcher matcher;
+    private final double[] brightness = new double[BRIGHTNESS_VALUES];
+
+    /**
+     * Builds the charset, the matcher and the brightness values to match.
+     */
+    @Setup(Level.Trial)
+    public void setUp() {
+        int first = charset.equals("digits") ? '0' : ' ';
+        int last = charset.equals("digits") ? '9' : '~';
+        chars = new char[last - first + 1];
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = (char) (first + i);
+        }
+        matcher = new SubImgCharMatcher(chars);
+        Random random = new Random(SEED);
+        for (int i = 0; i < BRIGHTNESS_VALUES; i++) {
+            brightness[i] = random.nextDouble();
+        }
+    }
+
+    /**
+     * Builds a matcher for the charset.
+     * @return The matcher.
+     */
+    @Benchmark
+    public SubImgCharMatcher construct() {
+        return new SubImgCharMatcher(chars);
+    }
+
+    /**
+     * Matches brightness values to chars.
+     * @param blackhole Consumes the chars.
+     */
+    @Benchmark
+    @OperationsPerInvocation(BRIGHTNESS_VALUES)
+    public void getCharByImageBrightness(Blackhole blackhole) {
+        for (double value : brightness) {
+            blackhole.consume(matcher.getCharByImageBrightness(value));
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package ascii_art;
+
+import Exceptions.WrongInputException;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests the parsing of shell scripts.
+ * @author Daniel, Inbar
+ */
+class ShellScriptTest {
+
+    @Test
+    void splitsCommandsOnSemicolonsAndNewLines() throws WrongInputException {
+        List<String[]> commands = ShellScript.parse("image x.jpg; res up\nadd all;asciiArt").getCommands();
+        assertEquals(4, commands.size());
+        assertArrayEquals(new String[]{"image", "x.jpg"}, commands.get(0));
+        assertArrayEquals(new String[]{"res", "up"}, commands.get(1));
+        assertArrayEquals(new String[]{"add", "all"}, commands.get(2));
+        assertArrayEquals(new String[]{"asciiArt"}, commands.get(3));
+    }
+
+    @Test
+    void skipsCommentsAndBlankCommands() throws WrongInputException {
+        List<String[]> commands = ShellScript.parse("# a comment\n\n ;  ;\n  mode   edge  ").getCommands();
+        assertEquals(1, commands.size());
+        assertArrayEquals(new String[]{"mode", "edge"}, commands.get(0));
+    }
+
+    @Test
+    void endsCommentsAtSemicolons() throws WrongInputException {
+        List<String[]> commands = ShellScript.parse("# a comment; res up").getCommands();
+        assertEquals(1, commands.size());
+        assertArrayEquals(new String[]{"res", "up"}, commands.get(0));
+    }
+
+    @Test
+    void parsesAnEmptyScript() throws WrongInputException {
+        assertTrue(ShellScript.parse("").getCommands().isEmpty());
+    }
+
+    @Test
+    void rejectsUnknownCommands() {
+        assertThrows(WrongInputException.class, () -> ShellScript.parse("add all; resolution up"));
+    }
+
+    @Test
+    void rejectsCommandsWithTheWrongNumberOfArguments() {
+        assertThrows(WrongInputException.class, () -> ShellScript.parse("res"));
+        assertThrows(WrongInputException.class, () -> ShellScript.parse("asciiArt now"));
+        assertThrows(WrongInputException.class, () -> ShellScript.parse("add a b"));
+    }
+
+    @Test
+    void commandsCannotBeModified() throws WrongInputException {
+        List<String[]> commands = ShellScript.parse("chars").getCommands();
+        assertThrows(UnsupportedOperationException.class, () -> commands.add(new String[]{"exit"}));
+    }
+}
@@ -0,0 +1,77 @@
+package ascii_art;
+
+import Exceptions.WrongInputException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Tests the exit statuses of shell scripts.
+ * @author Daniel, Inbar
+ */
+class ShellTest {
+    private static final String IMAGE =
+            Path.of(System.getProperty("examples.dir", "src/examples"), "board.jpeg").toString();
+
+    @Test
+    void succeedsWhenAllCommandsSucceed() throws WrongInputException {
+        assertEquals(Shell.EXIT_SUCCESS,
+                run("image " + IMAGE + "; res down; res down; res down; mode edge; asciiArt"));
+    }
+
+    @Test
+    void stopsAtExit() throws WrongInputException {
+        assertEquals(Shell.EXIT_SUCCESS, run("image " + IMAGE + "; exit; image missing.jpeg"));
+    }
+
+    @Test
+    void reportsAnImageThatCannotBeDecoded(@TempDir Path directory) throws IOException, WrongInputException {
+        Path notAnImage = Files.writeString(directory.resolve("text.jpeg"), "not an image");
+        assertEquals(Shell.EXIT_IMAGE_FILE, run("image " + notAnImage));
+    }
+
+    @Test
+    void reportsAsciiArtWithoutAnImage() throws WrongInputException {
+        // the default image is not there
+        assertEquals(Shell.EXIT_IMAGE_FILE, run("asciiArt"));
+    }
+
+    @Test
+    void reportsAnArgumentInAnIncorrectFormat() throws WrongInputException {
+        assertEquals(Shell.EXIT_INCORRECT_FORMAT, run("image " + IMAGE + "; res sideways"));
+        assertEquals(Shell.EXIT_INCORRECT_FORMAT, run("mode sideways"));
+        // a missing image file is an incorrect path rather than a problem with the image
+        assertEquals(Shell.EXIT_INCORRECT_FORMAT, run("image missing.jpeg"));
+    }
+
+    @Test
+    void reportsAResolutionOutOfBoundaries() throws WrongInputException {
+        // 128 columns reach 1 after seven halvings, the eighth is out of bounds
+        assertEquals(Shell.EXIT_OUT_OF_BOUNDARIES, run("image " + IMAGE + "; res down".repeat(8)));
+    }
+
+    @Test
+    void reportsAnEmptyCharset() throws WrongInputException {
+        assertEquals(Shell.EXIT_EMPTY_CHARSET, run("image " + IMAGE + "; remove all; asciiArt"));
+    }
+
+    @Test
+    void reportsTheFirstCommandThatFails() throws WrongInputException {
+        assertEquals(Shell.EXIT_INCORRECT_FORMAT, run("mode sideways; image missing.jpeg"));
+    }
+
+    /**
+     * Runs a script in a new shell.
+     * @param script The text of the script.
+     * @return Its exit status.
+     * @throws WrongInputException If the script has an invalid command.
+     */
+    private static int run(String script) throws WrongInputException {
+        return new Shell().runScript(ShellScript.parse(script));
+    }
+}
@@ -0,0 +1,146 @@
+package ascii_output;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests the bytes AnsiAsciiOutput writes for whole frames and for the changes between frames.
+ * @author Daniel, Inbar
+ */
+class AnsiAsciiOutputTest {
+    private static final String CLEAR = "\u001b[2J\u001b[H";
+    private static final String SAVE = "\u001b7";
+    private static final String RESTORE = "\u001b8";
+    private static final int TERMINAL_ROWS = 24;
+
+    private ByteArrayOutputStream terminal;
+    private AnsiAsciiOutput output;
+
+    @BeforeEach
+    void createOutput() {
+        terminal = new ByteArrayOutputStream();
+        output = new AnsiAsciiOutput(terminal, null, null, TERMINAL_ROWS);
+    }
+
+    @Test
+    void drawsTheFirstFrameInFull() {
+        output.out(frame("ab", "cd"));
+        assertEquals(CLEAR + "a b \r\nc d \r\n", written());
+    }
+
+    @Test
+    void writesNothingButTheCursorForAnUnchangedFrame() {
+        output.out(frame("ab", "cd"));
+        written();
+        output.out(frame("ab", "cd"));
+        assertEquals(SAVE + RESTORE, written());
+    }
+
+    @Test
+    void rewritesOnlyTheChangedCellRelativeToTheCursor() {
+        output.out(frame("ab", "cd"));
+        written();
+        // the cursor is on the row under the frame: one row up to row 1, then to the column of cell 1
+        output.out(frame("ab", "cx"));
+        assertEquals(SAVE + "\u001b[1A\u001b[3Gx " + RESTORE, written());
+    }
+
+    @Test
+    void movesBetweenRowsFromTheLastChangedRow() {
+        output.out(frame("ab", "cd", "ef"));
+        written();
+        output.out(frame("xb", "cd", "ey"));
+        assertEquals(SAVE + "\u001b[3A\u001b[1Gx \u001b[2B\u001b[3Gy " + RESTORE, written());
+    }
+
+    @Test
+    void bridgesUnchangedCellsCheaperThanAMove() {
+        output.out(frame("abcd"));
+        written();
+        // rewriting "b " is cheaper than moving to the column of cell 2
+        output.out(frame("xbyd"));
+        assertEquals(SAVE + "\u001b[1A\u001b[1Gx b y " + RESTORE, written());
+    }
+
+    @Test
+    void movesOverLongRunsOfUnchangedCells() {
+        output.out(frame("abcdefghij"));
+        written();
+        output.out(frame("xbcdefghiy"));
+        assertEquals(SAVE + "\u001b[1A\u001b[1Gx \u001b[19Gy " + RESTORE, written());
+    }
+
+    @Test
+    void drawsInFullAfterInvalidate() {
+        output.out(frame("ab"));
+        written();
+        output.invalidate();
+        output.out(frame("ax"));
+        assertEquals(CLEAR + "a x \r\n", written());
+    }
+
+    @Test
+    void drawsInFullWhenTheDimensionsChange() {
+        output.out(frame("ab"));
+        written();
+        output.out(frame("abc"));
+        assertEquals(CLEAR + "a b c \r\n", written());
+    }
+
+    @Test
+    void drawsInFullFramesThatDoNotFitTheTerminal() {
+        output = new AnsiAsciiOutput(terminal, null, null, 2);
+        output.out(frame("ab", "cd"));
+        written();
+        // two rows and the cursor row under them need three rows
+        output.out(frame("ab", "cx"));
+        assertEquals(CLEAR + "a b \r\nc x \r\n", written());
+    }
+
+    @Test
+    void keepsTheLatestFrameHeldBackAsPending() {
+        // a frame every 1000 seconds, so only the first frame is admitted
+        output = new AnsiAsciiOutput(terminal, new FrameRateLimiter(0.001), null, TERMINAL_ROWS);
+        assertTrue(output.outFrame(frame("ab")));
+        written();
+        assertFalse(output.outFrame(frame("xb")));
+        assertFalse(output.outFrame(frame("ay")));
+        assertEquals("", written());
+        assertEquals(1, output.getDroppedFrames());
+        // a frame written directly drops the pending one
+        output.out(frame("az"));
+        assertEquals(SAVE + "\u001b[1A\u001b[3Gz " + RESTORE, written());
+        assertEquals(2, output.getDroppedFrames());
+        assertEquals(2, output.getWrittenFrames());
+    }
+
+    /**
+     * Builds a frame from its rows.
+     * @param rows The rows, one string each.
+     * @return The frame.
+     */
+    private static char[][] frame(String... rows) {
+        char[][] chars = new char[rows.length][];
+        for (int y = 0; y < rows.length; y++) {
+            chars[y] = rows[y].toCharArray();
+        }
+        return chars;
+    }
+
+    /**
+     * Takes the bytes written to the terminal since the last call.
+     * @return The bytes, as a string.
+     */
+    private String written() {
+        String bytes = terminal.toString(StandardCharsets.UTF_8);
+        terminal.reset();
+        return bytes;
+    }
+}
@@ -0,0 +1,87 @@
+package image;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+/**
+ * Tests that an ImageCache decodes changed files again and drops the least recently
+ * used images beyond its budget.
+ * @author Daniel, Inbar
+ */
+class ImageCacheTest {
+    private static final Path EXAMPLES = Path.of(System.getProperty("examples.dir", "src/examples"));
+
+    @TempDir
+    Path directory;
+    private Path board;
+    private Path cat;
+
+    @BeforeEach
+    void copyImages() throws IOException {
+        board = Files.copy(EXAMPLES.resolve("board.jpeg"), directory.resolve("board.jpeg"));
+        cat = Files.copy(EXAMPLES.resolve("cat.jpeg"), directory.resolve("cat.jpeg"));
+    }
+
+    @Test
+    void returnsTheCachedImageOfAnUnchangedFile() throws IOException {
+        ImageCache cache = new ImageCache(Long.MAX_VALUE);
+        Image image = cache.get(board.toString(), 64);
+        assertSame(image, cache.get(board.toString(), 64));
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    void decodesAFileThatChangedAgain() throws IOException {
+        ImageCache cache = new ImageCache(Long.MAX_VALUE);
+        Image before = cache.get(board.toString());
+        Files.copy(cat, board, StandardCopyOption.REPLACE_EXISTING);
+        Image after = cache.get(board.toString());
+        assertNotSame(before, after);
+        assertEquals(new Image(cat.toString()).getWidth(), after.getWidth());
+    }
+
+    @Test
+    void decodesAFileTouchedSinceAgain() throws IOException {
+        ImageCache cache = new ImageCache(Long.MAX_VALUE);
+        Image before = cache.get(board.toString());
+        FileTime time = Files.getLastModifiedTime(board);
+        Files.setLastModifiedTime(board, FileTime.fromMillis(time.toMillis() + 60_000));
+        assertNotSame(before, cache.get(board.toString()));
+    }
+
+    @Test
+    void dropsTheLeastRecentlyUsedImagesBeyondTheBudget() throws IOException {
+        Path second = Files.copy(board, directory.resolve("second.jpeg"));
+        Path third = Files.copy(board, directory.resolve("third.jpeg"));
+        // room for two of the three copies
+        ImageCache cache = new ImageCache(2 * new Image(board.toString()).getRetainedBytes());
+        Image first = cache.get(board.toString());
+        Image secondImage = cache.get(second.toString());
+        // using the first image makes the second one the eldest
+        cache.get(board.toString());
+        cache.get(third.toString());
+        assertEquals(2, cache.size());
+        assertSame(first, cache.get(board.toString()));
+        assertNotSame(secondImage, cache.get(second.toString()));
+    }
+
+    @Test
+    void keepsTheLastImageUsedEvenOverTheBudget() throws IOException {
+        ImageCache cache = new ImageCache(0);
+        cache.get(board.toString());
+        Image last = cache.get(cat.toString());
+        assertEquals(1, cache.size());
+        assertSame(last, cache.get(cat.toString()));
+    }
+}
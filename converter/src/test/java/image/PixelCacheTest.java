@@ -0,0 +1,120 @@
+package image;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+/**
+ * Tests that a PixelCache reads back the pixels it wrote, replaces the raw files of
+ * changed images and deletes the least recently used raw files beyond its limit.
+ * @author Daniel, Inbar
+ */
+class PixelCacheTest {
+    private static final Path EXAMPLES = Path.of(System.getProperty("examples.dir", "src/examples"));
+
+    @TempDir
+    Path directory;
+    private Path cacheDirectory;
+    private Path board;
+    private Path cat;
+
+    @BeforeEach
+    void copyImages() throws IOException {
+        cacheDirectory = directory.resolve("cache");
+        board = Files.copy(EXAMPLES.resolve("board.jpeg"), directory.resolve("board.jpeg"));
+        cat = Files.copy(EXAMPLES.resolve("cat.jpeg"), directory.resolve("cat.jpeg"));
+    }
+
+    @Test
+    void readsBackThePixelsItWrote() throws IOException {
+        PixelCache cache = new PixelCache(cacheDirectory, Long.MAX_VALUE);
+        Image decoded = cache.get(board.toString(), 64);
+        assertEquals(1, rawFiles().size());
+        Image read = cache.get(board.toString(), 64);
+        assertEquals(decoded.getWidth(), read.getWidth());
+        assertEquals(decoded.getHeight(), read.getHeight());
+        assertArrayEquals(decoded.getRowHashes(), read.getRowHashes());
+        assertArrayEquals(new Image(board.toString(), 64).getRowHashes(), read.getRowHashes());
+    }
+
+    @Test
+    void keepsARawFileForEachStep() throws IOException {
+        PixelCache cache = new PixelCache(cacheDirectory, Long.MAX_VALUE);
+        cache.get(board.toString(), Integer.MAX_VALUE);
+        cache.get(board.toString(), 4);
+        int files = Image.getSubsampling(board.toString(), 4) > 1 ? 2 : 1;
+        assertEquals(files, rawFiles().size());
+    }
+
+    @Test
+    void replacesTheRawFileOfAChangedImage() throws IOException {
+        PixelCache cache = new PixelCache(cacheDirectory, Long.MAX_VALUE);
+        Image before = cache.get(board.toString(), Integer.MAX_VALUE);
+        Files.copy(cat, board, StandardCopyOption.REPLACE_EXISTING);
+        Image after = cache.get(board.toString(), Integer.MAX_VALUE);
+        assertFalse(Arrays.equals(before.getRowHashes(), after.getRowHashes()));
+        assertArrayEquals(new Image(cat.toString()).getRowHashes(), after.getRowHashes());
+        assertEquals(1, rawFiles().size());
+    }
+
+    @Test
+    void writesTheRawFileOfATouchedImageAgain() throws IOException {
+        PixelCache cache = new PixelCache(cacheDirectory, Long.MAX_VALUE);
+        cache.get(board.toString(), Integer.MAX_VALUE);
+        long touched = Files.getLastModifiedTime(board).toMillis() + 60_000;
+        Files.setLastModifiedTime(board, FileTime.fromMillis(touched));
+        cache.get(board.toString(), Integer.MAX_VALUE);
+        List<Path> raws = rawFiles();
+        assertEquals(1, raws.size());
+        assertEquals(touched, imageTimeOf(raws.get(0)));
+    }
+
+    @Test
+    void deletesTheLeastRecentlyUsedRawFilesBeyondTheLimit() throws IOException {
+        // too small for any raw file, so only the one just written is kept
+        PixelCache cache = new PixelCache(cacheDirectory, 1);
+        cache.get(board.toString(), Integer.MAX_VALUE);
+        Path boardRaw = rawFiles().get(0);
+        cache.get(cat.toString(), Integer.MAX_VALUE);
+        List<Path> raws = rawFiles();
+        assertEquals(1, raws.size());
+        assertNotEquals(boardRaw, raws.get(0));
+    }
+
+    /**
+     * Reads the last modification time of the image file from the header of a raw file.
+     * @param raw The raw file.
+     * @return The time, in milliseconds.
+     * @throws IOException If the raw file could not be read.
+     */
+    private static long imageTimeOf(Path raw) throws IOException {
+        // after the magic, the version and the size of the image file
+        return ByteBuffer.wrap(Files.readAllBytes(raw)).getLong(4 + 4 + 8);
+    }
+
+    /**
+     * Lists the raw files in the cache directory.
+     * @return The raw files.
+     * @throws IOException If the directory could not be listed.
+     */
+    private List<Path> rawFiles() throws IOException {
+        try (Stream<Path> files = Files.list(cacheDirectory)) {
+            return files.filter(file -> file.getFileName().toString().endsWith(".pixels")).toList();
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package image;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+/**
+ * Tests the eviction of the least recently used tiles from a TileCache.
+ * @author Daniel, Inbar
+ */
+class TileCacheTest {
+
+    @Test
+    void dropsTheEldestTileBeyondTheCapacity() {
+        TileCache cache = new TileCache(2);
+        GreynessGrid first = tile();
+        GreynessGrid second = tile();
+        GreynessGrid third = tile();
+        cache.put(64, Luminance.GAMMA, 0, 0, first);
+        cache.put(64, Luminance.GAMMA, 0, 1, second);
+        cache.put(64, Luminance.GAMMA, 1, 0, third);
+        assertEquals(2, cache.size());
+        assertNull(cache.get(64, Luminance.GAMMA, 0, 0));
+        assertSame(second, cache.get(64, Luminance.GAMMA, 0, 1));
+        assertSame(third, cache.get(64, Luminance.GAMMA, 1, 0));
+    }
+
+    @Test
+    void keepsTheTileUsedLast() {
+        TileCache cache = new TileCache(2);
+        GreynessGrid first = tile();
+        cache.put(64, Luminance.GAMMA, 0, 0, first);
+        cache.put(64, Luminance.GAMMA, 0, 1, tile());
+        // using the first tile makes the second one the eldest
+        cache.get(64, Luminance.GAMMA, 0, 0);
+        cache.put(64, Luminance.GAMMA, 1, 0, tile());
+        assertSame(first, cache.get(64, Luminance.GAMMA, 0, 0));
+        assertNull(cache.get(64, Luminance.GAMMA, 0, 1));
+    }
+
+    @Test
+    void findsTilesByResolutionAndLuminance() {
+        TileCache cache = new TileCache(4);
+        GreynessGrid tile = tile();
+        cache.put(64, Luminance.GAMMA, 0, 0, tile);
+        assertSame(tile, cache.get(64, Luminance.GAMMA, 0, 0));
+        assertNull(cache.get(128, Luminance.GAMMA, 0, 0));
+        assertNull(cache.get(64, Luminance.LINEAR, 0, 0));
+    }
+
+    @Test
+    void replacesATileAtTheSamePosition() {
+        TileCache cache = new TileCache(2);
+        GreynessGrid replacement = tile();
+        cache.put(64, Luminance.GAMMA, 0, 0, tile());
+        cache.put(64, Luminance.GAMMA, 0, 0, replacement);
+        assertEquals(1, cache.size());
+        assertSame(replacement, cache.get(64, Luminance.GAMMA, 0, 0));
+        assertEquals(replacement.getBytes(), cache.getBytes());
+    }
+
+    /**
+     * Builds a tile of two by two sub-images.
+     * @return The tile.
+     */
+    private static GreynessGrid tile() {
+        return new GreynessGrid(new double[]{0, 0.25, 0.5, 1}, 2, 2);
+    }
+}
@@ -0,0 +1,15 @@
+package Exceptions;
+
+/**
+ * exception to Image File
+ * @author Daniel, Inbar
+ */
+public class ImageFileException extends Exception {
+    /**
+     * constructor
+     * @param message
+     */
+    public ImageFileException(String message) {
+        super(message);
+    }
+}
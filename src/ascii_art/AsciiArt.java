@@ -0,0 +1,82 @@
+package ascii_art;
+
+import java.util.Arrays;
+
+/**
+ * The result of converting an image to ASCII art. Instances are immutable, so one
+ * result can be handed to any number of threads; callers that need an array get
+ * their own copy.
+ * @author Daniel, Inbar
+ */
+public final class AsciiArt {
+    private final char[][] chars;
+
+    /**
+     * Constructs a result that takes ownership of its chars.
+     * @param chars The chars, in rows; not modified after this call.
+     */
+    AsciiArt(char[][] chars) {
+        this.chars = chars;
+    }
+
+    /**
+     * Gets the number of rows.
+     * @return The number of rows.
+     */
+    public int getRows() {
+        return chars.length;
+    }
+
+    /**
+     * Gets the number of chars in a row.
+     * @return The number of columns.
+     */
+    public int getColumns() {
+        return chars.length == 0 ? 0 : chars[0].length;
+    }
+
+    /**
+     * Gets a single char.
+     * @param row The row of the char.
+     * @param column The column of the char.
+     * @return The char.
+     */
+    public char charAt(int row, int column) {
+        return chars[row][column];
+    }
+
+    /**
+     * Gets a row of chars, for ASCII art that shares the rows it did not change.
+     * @param row The row.
+     * @return The chars of the row; they must not be modified.
+     */
+    char[] getRow(int row) {
+        return chars[row];
+    }
+
+    /**
+     * Copies the chars into a new array, e.g. to pass to an AsciiOutput.
+     * @return A new array of the chars, in rows.
+     */
+    public char[][] toCharArray() {
+        char[][] copy = new char[chars.length][];
+        for (int i = 0; i < chars.length; i++) {
+            copy[i] = chars[i].clone();
+        }
+        return copy;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (this == other)
+            return true;
+        if (!(other instanceof AsciiArt))
+            return false;
+        return Arrays.deepEquals(chars, ((AsciiArt) other).chars);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.deepHashCode(chars);
+    }
+}
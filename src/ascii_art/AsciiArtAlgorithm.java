@@ -1,22 +1,24 @@
 package ascii_art;
-import image.ImageRenderer;
-import image_char_matching.SubImgCharMatcher;
 import image.Image;
-import java.util.ArrayList;
+import image.Luminance;
 
 
 /**
  * This class implements the algorithm for generating ASCII art from an image.
  * It takes an input image, resolution, and character set, and produces ASCII art.
+ * The settings can be changed between runs, so an instance belongs to a single
+ * thread; the conversion itself is done by an AsciiArtEngine, which may be shared.
  * @author Daniel, Inbar
  */
 public class AsciiArtAlgorithm {
-    private Image img;
+    private final AsciiArtEngine engine;
+    private final Image img;
     private int resolution;
     private char[] notes;
-    private char[][] asciiArtImage;
-    private int oldResolution = 0;
-    private boolean IsChangedNotes = true;
+    private RenderMode mode = RenderMode.BRIGHTNESS;
+    private Luminance luminance = Luminance.GAMMA;
+    private ConversionSpec lastSpec;
+    private AsciiArt asciiArt;
 
     /**
      * Constructs an AsciiArtAlgorithm object with the specified parameters.
@@ -25,9 +27,22 @@ public class AsciiArtAlgorithm {
      * @param notes The character set to use for rendering.
      */
     public AsciiArtAlgorithm(Image img, int resolution, char[] notes){
+        this(new AsciiArtEngine(), img, resolution, notes);
+    }
+
+    /**
+     * Constructs an AsciiArtAlgorithm object that converts with an existing engine,
+     * sharing its caches with the other users of the engine.
+     * @param engine The engine.
+     * @param img The input image.
+     * @param resolution The resolution of the ASCII art.
+     * @param notes The character set to use for rendering.
+     */
+    public AsciiArtAlgorithm(AsciiArtEngine engine, Image img, int resolution, char[] notes){
+        this.engine = engine;
         this.img = img;
         this.resolution = resolution;
-        this.notes = notes;
+        this.notes = notes.clone();
     }
 
     /**
@@ -43,31 +58,50 @@ public class AsciiArtAlgorithm {
      * @param notes the notes
      */
     public void SetNotes(char[] notes){
-        this.notes = notes;
-        IsChangedNotes = true;
+        this.notes = notes.clone();
+    }
+
+    /**
+     * setter for the render mode
+     * @param mode the mode
+     */
+    public void SetMode(RenderMode mode){
+        this.mode = mode;
+    }
+
+    /**
+     * setter for the luminance
+     * @param luminance the luminance
+     */
+    public void SetLuminance(Luminance luminance){
+        this.luminance = luminance;
+    }
+
+    /**
+     * Runs the ASCII art generation algorithm on a rectangle of the ASCII art only, see
+     * AsciiArtEngine.convertViewport. Moving the rectangle computes only what it newly covers.
+     * @param firstRow The first row of chars of the rectangle.
+     * @param firstColumn The first column of chars of the rectangle.
+     * @param rows The number of rows of the rectangle.
+     * @param columns The number of columns of the rectangle.
+     * @return A new 2D char array of the rectangle, clipped to the ASCII art of the whole image.
+     */
+    public char[][] runViewport(int firstRow, int firstColumn, int rows, int columns){
+        ConversionSpec spec = new ConversionSpec(resolution, notes, mode, luminance);
+        return engine.convertViewport(img, spec, firstRow, firstColumn, rows, columns).toCharArray();
     }
 
     /**
      * Runs the ASCII art generation algorithm.
-     * @return A 2D char array representing the generated ASCII art.
+     * Running again with the same settings does not convert again.
+     * @return A new 2D char array representing the generated ASCII art.
      */
     public char[][] run(){
-        if (oldResolution == resolution && asciiArtImage != null && !IsChangedNotes)
-            return asciiArtImage;
-
-        IsChangedNotes = false;
-        SubImgCharMatcher matcher = new SubImgCharMatcher(notes);
-        ImageRenderer renderer = new ImageRenderer(img);
-        renderer.setResolution(resolution);
-        oldResolution = resolution;
-        ArrayList<ArrayList<Double>> subImages = renderer.getGrayDividedImages();
-        char[][] asciiArtImg = new char[renderer.getSubHeight()][renderer.getSubWidth()];
-        for (int i = 0; i < renderer.getSubHeight(); i++) {
-            for (int j = 0; j < renderer.getSubWidth(); j++) {
-                asciiArtImg[i][j] = matcher.getCharByImageBrightness(subImages.get(i).get(j));
-            }
+        ConversionSpec spec = new ConversionSpec(resolution, notes, mode, luminance);
+        if (!spec.equals(lastSpec)) {
+            asciiArt = engine.convert(img, spec);
+            lastSpec = spec;
         }
-        asciiArtImage = asciiArtImg;
-        return asciiArtImg;
+        return asciiArt.toCharArray();
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,388 @@
+package ascii_art;
+
+import image.Cancellation;
+import image.EdgeGrid;
+import image.GreynessGrid;
+import image.Image;
+import image.ImageChange;
+import image.ImageRenderer;
+import image.Luminance;
+import image_char_matching.EdgeCharMatcher;
+import image_char_matching.SubImgCharMatcher;
+import metrics.Metrics;
+import metrics.Stage;
+import metrics.StageTimer;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * Converts images to ASCII art. An engine has no mutable state other than its
+ * caches, which are thread-safe, so one instance can serve any number of
+ * concurrent conversions:
+ * <ul>
+ *     <li>the padding, greyness and edges of each image, resolution and luminance, kept with
+ *     the image itself (see ImageRenderer.of), so they live as long as the image;</li>
+ *     <li>the char matchers of the 64 most recently used character sets, read-only copies
+ *     (see SubImgCharMatcher.readOnlyCopy), so no caller can change what another one matches.</li>
+ * </ul>
+ * A new version of an image can be converted from the ASCII art of the previous one,
+ * computing only what its changed pixels affect (see inherit and update).
+ * The greyness of a viewport or a preview is only needed for one conversion, so it is
+ * released as soon as its chars are matched (see GreynessGrid.release).
+ * @author Daniel, Inbar
+ */
+public class AsciiArtEngine {
+    // the greyness levels of a preview
+    private static final int PREVIEW_LEVELS = 255;
+    // the character sets whose matchers are kept, so clients of a server cannot fill the heap with them
+    private static final int MAX_MATCHERS = 64;
+    private final LinkedHashMap<String, SubImgCharMatcher> matchers = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * Converts an image to ASCII art.
+     * @param image The image.
+     * @param spec The resolution, character set, mode and luminance.
+     * @return The ASCII art.
+     */
+    public AsciiArt convert(Image image, ConversionSpec spec) {
+        return convert(image, spec, Cancellation.NONE);
+    }
+
+    /**
+     * Converts an image to ASCII art unless the conversion is cancelled, e.g. because
+     * its result is no longer wanted. Cancellation is checked between rows of sub-images
+     * while the greyness or edges are computed and while chars are matched, except
+     * within error diffusion, whose rows depend on each other.
+     * @param image The image.
+     * @param spec The resolution, character set, mode and luminance.
+     * @param cancellation Cancels the conversion; what it computed is then not cached.
+     * @return The ASCII art.
+     * @throws java.util.concurrent.CancellationException If the conversion was cancelled.
+     */
+    public AsciiArt convert(Image image, ConversionSpec spec, Cancellation cancellation) {
+        ImageRenderer renderer = ImageRenderer.of(image);
+        if (spec.getMode() == RenderMode.EDGE) {
+            // the edge pass measures greyness in gamma-encoded luminance only
+            GreynessGrid greyness = spec.getLuminance() == Luminance.GAMMA ? null :
+                    renderer.getGreyness(spec.getResolution(), spec.getLuminance(), cancellation);
+            return convertEdges(renderer.getEdges(spec.getResolution(), cancellation), greyness, spec,
+                    cancellation);
+        }
+        GreynessGrid greyness = renderer.getGreyness(spec.getResolution(), spec.getLuminance(), cancellation);
+        if (spec.getMode() == RenderMode.DITHER)
+            return dither(greyness, spec);
+        return match(greyness, spec, cancellation);
+    }
+
+    /**
+     * Converts a rectangle of the ASCII art of an image, e.g. the part of a large image
+     * shown on the screen, computing only the greyness of the tiles it covers (see
+     * ImageRenderer.getViewport), so moving it computes only the newly covered tiles.
+     * The rectangle is clipped to the ASCII art of the whole image. In edge mode the edges
+     * of the whole image are computed once and the rectangle is matched from them; in
+     * dither mode the errors are diffused within the rectangle only.
+     * @param image The image.
+     * @param spec The resolution of the whole image, character set, mode and luminance.
+     * @param firstRow The first row of chars of the rectangle.
+     * @param firstColumn The first column of chars of the rectangle.
+     * @param rows The number of rows of the rectangle.
+     * @param columns The number of columns of the rectangle.
+     * @return The ASCII art of the rectangle.
+     */
+    public AsciiArt convertViewport(Image image, ConversionSpec spec, int firstRow, int firstColumn, int rows,
+                                    int columns) {
+        ImageRenderer renderer = ImageRenderer.of(image);
+        if (spec.getMode() == RenderMode.EDGE) {
+            EdgeGrid edges = renderer.getEdges(spec.getResolution());
+            GreynessGrid greyness = spec.getLuminance() == Luminance.GAMMA ? null :
+                    renderer.getGreyness(spec.getResolution(), spec.getLuminance());
+            int top = Math.min(Math.max(0, firstRow), edges.getRows());
+            int left = Math.min(Math.max(0, firstColumn), edges.getColumns());
+            int height = Math.max(0, Math.min(rows, edges.getRows() - top));
+            int width = Math.max(0, Math.min(columns, edges.getColumns() - left));
+            SubImgCharMatcher matcher = getMatcher(spec);
+            StageTimer timer = Metrics.start(Stage.MATCHING);
+            char[][] chars = new char[height][];
+            for (int i = 0; i < height; i++) {
+                chars[i] = convertEdgeRow(edges, greyness, top + i, left, width, matcher);
+            }
+            Metrics.stop(timer, (long) height * width * Character.BYTES);
+            return new AsciiArt(chars);
+        }
+        GreynessGrid greyness = renderer.getViewport(spec.getResolution(), spec.getLuminance(), firstRow,
+                firstColumn, rows, columns);
+        try {
+            return spec.getMode() == RenderMode.DITHER ? dither(greyness, spec) :
+                    match(greyness, spec, Cancellation.NONE);
+        } finally {
+            greyness.release();
+        }
+    }
+
+    /**
+     * Prepares a new version of an image, e.g. a file that was exported again, to be
+     * converted with update: finds the rows of pixels that changed, and lets the new
+     * version inherit the greyness values and edges of the previous one, computing only
+     * the rows of sub-images whose pixels changed (see ImageRenderer.inherit).
+     * @param previous The previous version of the image.
+     * @param current The new version.
+     * @return The change from the previous version to the new one.
+     */
+    public ImageChange inherit(Image previous, Image current) {
+        ImageChange change = ImageChange.between(previous, current);
+        ImageRenderer.of(current).inherit(ImageRenderer.of(previous), change);
+        return change;
+    }
+
+    /**
+     * Converts a new version of an image to ASCII art, matching only the rows of chars
+     * whose sub-images changed and taking the other rows from the ASCII art of the
+     * previous version, converted with the same spec. If the image was resized, it is
+     * converted in full; in dither mode the chars are all matched again, since an error
+     * carries on to every row below it, but only the changed greyness is computed.
+     * @param image The new version of the image.
+     * @param spec The resolution, character set, mode and luminance of both versions.
+     * @param previous The ASCII art of the previous version.
+     * @param change The change from the previous version, see inherit.
+     * @return The ASCII art.
+     */
+    public AsciiArt update(Image image, ConversionSpec spec, AsciiArt previous, ImageChange change) {
+        ImageRenderer renderer = ImageRenderer.of(image);
+        if (change.isResized() || spec.getMode() == RenderMode.DITHER || previous.getRows() != renderer.getRows(spec.getResolution()) ||
+                previous.getColumns() != spec.getResolution())
+            return convert(image, spec);
+        int[] rows = renderer.getChangedRows(spec.getResolution(), change);
+        EdgeGrid edges = null;
+        GreynessGrid greyness = null;
+        if (spec.getMode() == RenderMode.EDGE) {
+            edges = renderer.getEdges(spec.getResolution());
+            if (spec.getLuminance() != Luminance.GAMMA)
+                greyness = renderer.getGreyness(spec.getResolution(), spec.getLuminance());
+        } else {
+            greyness = renderer.getGreyness(spec.getResolution(), spec.getLuminance());
+        }
+        SubImgCharMatcher matcher = getMatcher(spec);
+        StageTimer timer = Metrics.start(Stage.MATCHING);
+        // the rows of an AsciiArt are never modified, so the unchanged ones are shared
+        char[][] chars = new char[previous.getRows()][];
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = previous.getRow(i);
+        }
+        for (int row : rows) {
+            chars[row] = edges != null ? convertEdgeRow(edges, greyness, row, 0, edges.getColumns(), matcher) :
+                    matchRow(greyness, row, matcher);
+        }
+        Metrics.stop(timer, (long) rows.length * spec.getResolution() * Character.BYTES);
+        return new AsciiArt(chars);
+    }
+
+    /**
+     * Converts an image to a quick preview of its ASCII art, by brightness, from the
+     * greyness of a few pixels of each sub-image (see ImageRenderer.getSampledGreyness)
+     * instead of all of them. The greyness is also rounded to 1/255, so the chars are
+     * looked up in a table instead of matched one by one.
+     * @param image The image.
+     * @param spec The resolution, character set and luminance.
+     * @param samplesPerSide The number of pixels read along each side of a sub-image.
+     * @return The preview.
+     */
+    public AsciiArt convertPreview(Image image, ConversionSpec spec, int samplesPerSide) {
+        SubImgCharMatcher matcher = getMatcher(spec);
+        char[] table = new char[PREVIEW_LEVELS + 1];
+        for (int level = 0; level <= PREVIEW_LEVELS; level++) {
+            table[level] = matcher.getCharByImageBrightness((double) level / PREVIEW_LEVELS);
+        }
+        // the grid is pooled: taken last, right before the try that releases it
+        GreynessGrid greyness = ImageRenderer.of(image).getSampledGreyness(spec.getResolution(), samplesPerSide,
+                spec.getLuminance());
+        try {
+            char[][] chars = new char[greyness.getRows()][greyness.getColumns()];
+            for (int i = 0; i < greyness.getRows(); i++) {
+                for (int j = 0; j < greyness.getColumns(); j++) {
+                    chars[i][j] = table[(int) Math.round(greyness.get(i, j) * PREVIEW_LEVELS)];
+                }
+            }
+            return new AsciiArt(chars);
+        } finally {
+            greyness.release();
+        }
+    }
+
+    /**
+     * Checks whether converting an image would only match chars, because the greyness
+     * or edges it needs were already computed.
+     * @param image The image.
+     * @param spec The resolution, character set, mode and luminance.
+     * @return True if they were computed.
+     */
+    public boolean isComputed(Image image, ConversionSpec spec) {
+        ImageRenderer renderer = ImageRenderer.of(image);
+        if (spec.getMode() != RenderMode.EDGE)
+            return renderer.isComputed(spec.getResolution(), spec.getLuminance());
+        return renderer.isEdgesComputed(spec.getResolution()) && (spec.getLuminance() == Luminance.GAMMA ||
+                renderer.isComputed(spec.getResolution(), spec.getLuminance()));
+    }
+
+    /**
+     * Matches the sub-images of an image to chars by their brightness.
+     * @param greyness The greyness of the sub-images.
+     * @param spec The character set.
+     * @param cancellation Checked before each row.
+     * @return The ASCII art.
+     */
+    private AsciiArt match(GreynessGrid greyness, ConversionSpec spec, Cancellation cancellation) {
+        SubImgCharMatcher matcher = getMatcher(spec);
+        StageTimer timer = Metrics.start(Stage.MATCHING);
+        char[][] chars = new char[greyness.getRows()][];
+        for (int i = 0; i < greyness.getRows(); i++) {
+            cancellation.check();
+            chars[i] = matchRow(greyness, i, matcher);
+        }
+        Metrics.stop(timer, (long) greyness.getRows() * greyness.getColumns() * Character.BYTES);
+        return new AsciiArt(chars);
+    }
+
+    /**
+     * Matches a row of sub-images to chars by their brightness.
+     * @param greyness The greyness of the sub-images.
+     * @param row The row.
+     * @param matcher The matcher of the character set.
+     * @return The chars of the row.
+     */
+    private static char[] matchRow(GreynessGrid greyness, int row, SubImgCharMatcher matcher) {
+        char[] chars = new char[greyness.getColumns()];
+        for (int j = 0; j < greyness.getColumns(); j++) {
+            chars[j] = matcher.getCharByImageBrightness(greyness.get(row, j));
+        }
+        return chars;
+    }
+
+    /**
+     * Matches the sub-images of an image to chars by their brightness with error
+     * diffusion, see ErrorDiffusion.
+     * @param greyness The greyness of the sub-images.
+     * @param spec The character set.
+     * @return The ASCII art.
+     */
+    private AsciiArt dither(GreynessGrid greyness, ConversionSpec spec) {
+        SubImgCharMatcher matcher = getMatcher(spec);
+        StageTimer timer = Metrics.start(Stage.MATCHING);
+        char[][] chars = ErrorDiffusion.dither(greyness, matcher);
+        Metrics.stop(timer, (long) greyness.getRows() * greyness.getColumns() * Character.BYTES);
+        return new AsciiArt(chars);
+    }
+
+    /**
+     * Converts the sub-images of an image in edge mode: those with a strong straight
+     * edge to directional chars, the others by their brightness. In gamma-encoded
+     * luminance the greyness comes from the same pass as the edges, so it is not
+     * computed a second time.
+     * @param edges The edges of the image at the resolution of the spec.
+     * @param greyness The greyness of the sub-images, or null to take it from the edge pass.
+     * @param spec The resolution and character set.
+     * @param cancellation Checked before each row.
+     * @return The ASCII art.
+     */
+    private AsciiArt convertEdges(EdgeGrid edges, GreynessGrid greyness, ConversionSpec spec,
+                                  Cancellation cancellation) {
+        SubImgCharMatcher matcher = getMatcher(spec);
+        StageTimer timer = Metrics.start(Stage.MATCHING);
+        char[][] chars = new char[edges.getRows()][];
+        for (int i = 0; i < edges.getRows(); i++) {
+            cancellation.check();
+            chars[i] = convertEdgeRow(edges, greyness, i, 0, edges.getColumns(), matcher);
+        }
+        Metrics.stop(timer, (long) edges.getRows() * edges.getColumns() * Character.BYTES);
+        return new AsciiArt(chars);
+    }
+
+    /**
+     * Converts some of the sub-images of a row in edge mode, see convertEdges.
+     * @param edges The edges of the image.
+     * @param greyness The greyness of the sub-images, or null to take it from the edge pass.
+     * @param row The row.
+     * @param firstColumn The first column to convert.
+     * @param columns The number of columns to convert.
+     * @param matcher The matcher of the character set.
+     * @return The chars of the columns.
+     */
+    private static char[] convertEdgeRow(EdgeGrid edges, GreynessGrid greyness, int row, int firstColumn,
+                                         int columns, SubImgCharMatcher matcher) {
+        char[] chars = new char[columns];
+        for (int k = 0; k < columns; k++) {
+            int j = firstColumn + k;
+            char c = EdgeCharMatcher.getCharByEdge(edges.getStrength(row, j), edges.getAlignmentX(row, j),
+                    edges.getAlignmentY(row, j), edges.getPosition(row, j));
+            if (c == EdgeCharMatcher.NO_EDGE)
+                c = matcher.getCharByImageBrightness(greyness == null ? edges.getGreyness(row, j) :
+                        greyness.get(row, j));
+            chars[k] = c;
+        }
+        return chars;
+    }
+
+    /**
+     * Computes the greyness values of an image at a resolution ahead of a conversion.
+     * @param image The image.
+     * @param resolution The resolution.
+     */
+    public void precomputeGreyness(Image image, int resolution) {
+        ImageRenderer.of(image).precompute(resolution);
+    }
+
+    /**
+     * Computes the greyness values of an image at a resolution, measured with a
+     * luminance, ahead of a conversion.
+     * @param image The image.
+     * @param resolution The resolution.
+     * @param luminance How the greyness is measured.
+     */
+    public void precomputeGreyness(Image image, int resolution, Luminance luminance) {
+        ImageRenderer.of(image).precompute(resolution, luminance);
+    }
+
+    /**
+     * Computes the edges of an image at a resolution ahead of a conversion in edge mode.
+     * @param image The image.
+     * @param resolution The resolution.
+     */
+    public void precomputeEdges(Image image, int resolution) {
+        ImageRenderer.of(image).getEdges(resolution);
+    }
+
+    /**
+     * Builds the char matcher of a character set ahead of a conversion.
+     * @param spec The spec whose character set to build.
+     */
+    public void precomputeMatcher(ConversionSpec spec) {
+        getMatcher(spec);
+    }
+
+    /**
+     * Gets the matcher of a character set, building it on first use, outside the lock
+     * of the matchers so conversions with other character sets do not wait for it; two
+     * threads that need the same new character set may both build it. Beyond
+     * MAX_MATCHERS character sets, the least recently used matchers are dropped.
+     * @param spec The spec whose character set to match with.
+     * @return The matcher, a read-only copy shared by the conversions with its character set.
+     */
+    private SubImgCharMatcher getMatcher(ConversionSpec spec) {
+        String charset = spec.getCharsetKey();
+        synchronized (matchers) {
+            SubImgCharMatcher matcher = matchers.get(charset);
+            if (matcher != null)
+                return matcher;
+        }
+        SubImgCharMatcher built = new SubImgCharMatcher(charset.toCharArray()).readOnlyCopy();
+        synchronized (matchers) {
+            SubImgCharMatcher matcher = matchers.putIfAbsent(charset, built);
+            Iterator<SubImgCharMatcher> eldest = matchers.values().iterator();
+            while (matchers.size() > MAX_MATCHERS) {
+                eldest.next();
+                eldest.remove();
+            }
+            return matcher != null ? matcher : built;
+        }
+    }
+}
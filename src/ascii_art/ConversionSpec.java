@@ -0,0 +1,127 @@
+package ascii_art;
+
+import image.Luminance;
+
+import java.util.Arrays;
+
+/**
+ * The settings of one conversion of an image to ASCII art: the resolution, the
+ * character set, the render mode and the luminance. Instances are immutable, so they can be shared between threads
+ * and used as cache keys.
+ * @author Daniel, Inbar
+ */
+public final class ConversionSpec {
+    private final int resolution;
+    private final char[] charset;
+    private final RenderMode mode;
+    private final Luminance luminance;
+
+    /**
+     * Constructs a conversion spec that matches by brightness.
+     * @param resolution The number of chars in a row of the ASCII art.
+     * @param charset The chars to render with; copied, sorted and without duplicates.
+     */
+    public ConversionSpec(int resolution, char[] charset) {
+        this(resolution, charset, RenderMode.BRIGHTNESS);
+    }
+
+    /**
+     * Constructs a conversion spec that measures greyness in gamma-encoded luminance.
+     * @param resolution The number of chars in a row of the ASCII art.
+     * @param charset The chars to render with; copied, sorted and without duplicates.
+     * @param mode How the sub-images are matched to chars.
+     */
+    public ConversionSpec(int resolution, char[] charset, RenderMode mode) {
+        this(resolution, charset, mode, Luminance.GAMMA);
+    }
+
+    /**
+     * Constructs a conversion spec.
+     * @param resolution The number of chars in a row of the ASCII art.
+     * @param charset The chars to render with; copied, sorted and without duplicates.
+     * @param mode How the sub-images are matched to chars.
+     * @param luminance How the greyness of the sub-images is measured.
+     */
+    public ConversionSpec(int resolution, char[] charset, RenderMode mode, Luminance luminance) {
+        if (resolution <= 0)
+            throw new IllegalArgumentException("The resolution must be positive.");
+        if (charset.length == 0)
+            throw new IllegalArgumentException("The charset is empty.");
+        this.resolution = resolution;
+        this.charset = sortedDistinct(charset);
+        this.mode = mode;
+        this.luminance = luminance;
+    }
+
+    /**
+     * Gets the resolution.
+     * @return The number of chars in a row of the ASCII art.
+     */
+    public int getResolution() {
+        return resolution;
+    }
+
+    /**
+     * Gets the character set.
+     * @return A copy of the sorted chars.
+     */
+    public char[] getCharset() {
+        return charset.clone();
+    }
+
+    /**
+     * Gets the render mode.
+     * @return How the sub-images are matched to chars.
+     */
+    public RenderMode getMode() {
+        return mode;
+    }
+
+    /**
+     * Gets the luminance.
+     * @return How the greyness of the sub-images is measured.
+     */
+    public Luminance getLuminance() {
+        return luminance;
+    }
+
+    /**
+     * Gets a key identifying the character set.
+     * @return The sorted chars as a string.
+     */
+    String getCharsetKey() {
+        return new String(charset);
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (this == other)
+            return true;
+        if (!(other instanceof ConversionSpec))
+            return false;
+        ConversionSpec spec = (ConversionSpec) other;
+        return resolution == spec.resolution && mode == spec.mode && luminance == spec.luminance &&
+                Arrays.equals(charset, spec.charset);
+    }
+
+    @Override
+    public int hashCode() {
+        return ((31 * resolution + mode.hashCode()) * 31 + luminance.hashCode()) * 31 + Arrays.hashCode(charset);
+    }
+
+    /**
+     * Sorts chars and removes their duplicates.
+     * @param chars The chars.
+     * @return A new sorted array of the distinct chars.
+     */
+    private static char[] sortedDistinct(char[] chars) {
+        char[] sorted = chars.clone();
+        Arrays.sort(sorted);
+        int distinct = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            if (i == 0 || sorted[i] != sorted[i - 1])
+                sorted[distinct++] = sorted[i];
+        }
+        return Arrays.copyOf(sorted, distinct);
+    }
+}
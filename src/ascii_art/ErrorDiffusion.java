@@ -0,0 +1,155 @@
+package ascii_art;
+
+import image.GreynessGrid;
+import image_char_matching.SubImgCharMatcher;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.stream.IntStream;
+
+/**
+ * Matches the sub-images of an image to chars by their brightness with Floyd-Steinberg
+ * error diffusion: the difference between the greyness of a sub-image, plus the error
+ * carried into it, and the normalized brightness of its char is carried on to the
+ * sub-image on its right (7/16) and to the three below it (3/16, 5/16 and 1/16), so a
+ * region is drawn with a mix of chars whose mean brightness is its greyness, instead of
+ * bands of a single char.
+ * <p>
+ * A sub-image needs the errors of the row above up to the sub-image below-right of it,
+ * so the rows run as a wavefront: the workers take the rows in order, and a row
+ * computes a chunk of its columns once the row above finished one column past it.
+ * A worker only waits for a row that a running worker already took, and the errors are
+ * added in the same order whatever the number of workers, so the chars are always the same.
+ * @author Daniel, Inbar
+ */
+final class ErrorDiffusion {
+    private static final double RIGHT = 7 / 16.0;
+    private static final double BELOW_LEFT = 3 / 16.0;
+    private static final double BELOW = 5 / 16.0;
+    private static final double BELOW_RIGHT = 1 / 16.0;
+    // the columns a row computes between two reports of its progress
+    private static final int CHUNK_COLUMNS = 32;
+    // how long a waiting row spins before it lets other threads run
+    private static final int SPINS_BEFORE_YIELD = 64;
+    private final GreynessGrid greyness;
+    private final double[] levels;
+    private final char[] levelChars;
+    private final int rows;
+    private final int columns;
+    // the errors carried into each row from the row above, with a column of margin on each side
+    private final double[][] errors;
+    // the number of columns each row finished
+    private final AtomicIntegerArray progress;
+    private final AtomicInteger nextRow = new AtomicInteger();
+    private final char[][] chars;
+
+    /**
+     * constructor
+     * @param greyness The greyness of the sub-images.
+     * @param matcher The matcher of the character set.
+     */
+    private ErrorDiffusion(GreynessGrid greyness, SubImgCharMatcher matcher) {
+        this.greyness = greyness;
+        levels = matcher.getNormalizedBrightnesses();
+        levelChars = matcher.getCharsByNormalizedBrightness();
+        rows = greyness.getRows();
+        columns = greyness.getColumns();
+        errors = new double[rows][columns + 2];
+        progress = new AtomicIntegerArray(rows);
+        chars = new char[rows][];
+    }
+
+    /**
+     * Matches the sub-images of an image to chars with error diffusion, on as many
+     * threads as there are processors, up to the number of rows.
+     * @param greyness The greyness of the sub-images.
+     * @param matcher The matcher of the character set.
+     * @return The chars, in rows.
+     */
+    static char[][] dither(GreynessGrid greyness, SubImgCharMatcher matcher) {
+        ErrorDiffusion diffusion = new ErrorDiffusion(greyness, matcher);
+        int workers = Math.min(diffusion.rows, Runtime.getRuntime().availableProcessors());
+        if (workers <= 1)
+            diffusion.work();
+        else
+            IntStream.range(0, workers).parallel().forEach(worker -> diffusion.work());
+        return diffusion.chars;
+    }
+
+    /**
+     * Takes the next row and computes it, until no row is left.
+     */
+    private void work() {
+        int row;
+        while ((row = nextRow.getAndIncrement()) < rows) {
+            ditherRow(row);
+        }
+    }
+
+    /**
+     * Computes the chars of a row, carrying its errors into the row below.
+     * @param row The row.
+     */
+    private void ditherRow(int row) {
+        double[] carried = errors[row];
+        double[] below = row + 1 < rows ? errors[row + 1] : null;
+        char[] line = new char[columns];
+        double right = 0;
+        for (int start = 0; start < columns; start += CHUNK_COLUMNS) {
+            int end = Math.min(columns, start + CHUNK_COLUMNS);
+            // the last sub-image of the chunk takes an error from the one above-right of it
+            if (row > 0)
+                awaitProgress(row - 1, Math.min(columns, end + 1));
+            for (int col = start; col < end; col++) {
+                double value = Math.min(1, Math.max(0, greyness.get(row, col) + carried[col + 1] + right));
+                int level = nearestLevel(value);
+                line[col] = levelChars[level];
+                double error = value - levels[level];
+                right = error * RIGHT;
+                if (below != null) {
+                    // index col + 1 of the errors is column col
+                    below[col] += error * BELOW_LEFT;
+                    below[col + 1] += error * BELOW;
+                    below[col + 2] += error * BELOW_RIGHT;
+                }
+            }
+            progress.set(row, end);
+        }
+        chars[row] = line;
+    }
+
+    /**
+     * Waits until a row finished a number of columns.
+     * @param row The row.
+     * @param columnsDone The number of columns.
+     */
+    private void awaitProgress(int row, int columnsDone) {
+        int spins = 0;
+        while (progress.get(row) < columnsDone) {
+            if (++spins < SPINS_BEFORE_YIELD)
+                Thread.onSpinWait();
+            else
+                Thread.yield();
+        }
+    }
+
+    /**
+     * Finds the level nearest to a value, the upper one on a tie, as
+     * SubImgCharMatcher.getCharByImageBrightness does.
+     * @param value The value, between 0 and 1.
+     * @return The index of the level.
+     */
+    private int nearestLevel(double value) {
+        int found = Arrays.binarySearch(levels, value);
+        if (found >= 0)
+            return found;
+        int upper = -found - 1;
+        int lower = upper - 1;
+        if (lower < 0)
+            return upper;
+        if (upper == levels.length)
+            return lower;
+        return value - levels[lower] < levels[upper] - value ? lower : upper;
+    }
+}
@@ -0,0 +1,130 @@
+package ascii_art;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Watches an image file and reports when it changed, e.g. when a design tool exports
+ * it again. An export is often several events, a write in parts or a new file moved
+ * over the old one, so the events are debounced: the change is reported once no event
+ * for the file came for DEBOUNCE_MILLIS.
+ * The file is watched through its directory, so it may also be deleted and created again.
+ * Changes are reported on a daemon thread of the watcher, one at a time; a change that
+ * fails to be handled is logged, and the file is still watched.
+ * @author Daniel, Inbar
+ */
+class ImageWatcher {
+    // how long the file must stay unchanged before a change is reported
+    private static final long DEBOUNCE_MILLIS = Long.getLong("ascii.watchDebounceMillis", 200);
+    private final Path file;
+    private final WatchService service;
+    private final Runnable onChange;
+    private final CountDownLatch stopped = new CountDownLatch(1);
+
+    /**
+     * Starts watching a file.
+     * @param file The file.
+     * @param onChange Called on the thread of the watcher after each debounced change.
+     * @throws IOException If the directory of the file cannot be watched.
+     */
+    ImageWatcher(Path file, Runnable onChange) throws IOException {
+        this.file = file.toAbsolutePath().normalize();
+        this.onChange = onChange;
+        service = FileSystems.getDefault().newWatchService();
+        try {
+            this.file.getParent().register(service, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY);
+        } catch (IOException e) {
+            service.close();
+            throw e;
+        }
+        Thread thread = new Thread(this::watch, "watch");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Gets the watched file.
+     * @return The absolute path of the file.
+     */
+    Path getFile() {
+        return file;
+    }
+
+    /**
+     * Stops watching. A change that is being reported is still reported.
+     */
+    void stop() {
+        try {
+            service.close();
+        } catch (IOException e) {
+            // the service is closed anyway
+        }
+    }
+
+    /**
+     * Waits until the watcher stopped, e.g. for a script that ends watching.
+     * @throws InterruptedException If the waiting thread was interrupted.
+     */
+    void await() throws InterruptedException {
+        stopped.await();
+    }
+
+    /**
+     * Waits for changes of the file and reports them, until the watcher is stopped.
+     */
+    private void watch() {
+        try {
+            while (true) {
+                if (!hasFileEvent(service.take()))
+                    continue;
+                // wait for the events of the same export to end; other files do not delay it
+                long quietSince = System.nanoTime();
+                long remaining;
+                while ((remaining = quietSince + TimeUnit.MILLISECONDS.toNanos(DEBOUNCE_MILLIS) -
+                        System.nanoTime()) > 0) {
+                    WatchKey key = service.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (key != null && hasFileEvent(key))
+                        quietSince = System.nanoTime();
+                }
+                try {
+                    onChange.run();
+                } catch (RuntimeException e) {
+                    // one failed change must not end the watch, the next change is reported again
+                    Logger.getGlobal().severe(String.format("Failed to handle a change of \"%s\": %s", file, e));
+                }
+            }
+        } catch (ClosedWatchServiceException | InterruptedException e) {
+            // stopped
+        } finally {
+            stopped.countDown();
+        }
+    }
+
+    /**
+     * Reads the events of a key and resets it. If the directory can no longer be
+     * watched, e.g. because it was deleted, the watcher stops.
+     * @param key The key, of the directory of the file.
+     * @return True if one of the events was about the file.
+     */
+    private boolean hasFileEvent(WatchKey key) {
+        boolean found = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            // an overflow may have lost an event of the file
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW || file.getFileName().equals(event.context()))
+                found = true;
+        }
+        if (!key.reset())
+            stop();
+        return found;
+    }
+}
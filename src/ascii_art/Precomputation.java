@@ -0,0 +1,77 @@
+package ascii_art;
+
+import image.Image;
+import image.ImageRenderer;
+import image.Luminance;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * Work done in the background as soon as an image is loaded, while the user is
+ * still typing: padding the image, the greyness of the current resolution and of
+ * its neighbouring resolutions (the edges of the current resolution in edge mode,
+ * and its greyness too if it is not measured in gamma-encoded luminance),
+ * and the char matcher of the current charset.
+ * The work fills the caches of the image and of the engine, so asciiArt finds
+ * its results there, and waits only for what is still being computed.
+ * @author Daniel, Inbar
+ */
+class Precomputation {
+    private final CompletableFuture<?>[] steps;
+
+    /**
+     * Starts precomputing for an image.
+     * @param engine The engine that will convert the image.
+     * @param image The loaded image.
+     * @param resolution The current resolution.
+     * @param minResolution The lowest resolution the image allows.
+     * @param maxResolution The highest resolution the image allows, in the pixels of its file.
+     * @param notes The current character set, may be empty.
+     * @param mode The current render mode.
+     * @param luminance The current luminance.
+     * @param executor The executor to run the work on.
+     */
+    Precomputation(AsciiArtEngine engine, Image image, int resolution, int minResolution,
+                   int maxResolution, char[] notes, RenderMode mode, Luminance luminance,
+                   Executor executor) {
+        // the current resolution comes first, the neighbours are only needed after "res up/down"
+        CompletableFuture<?> padding = CompletableFuture.runAsync(() -> ImageRenderer.of(image), executor);
+        CompletableFuture<?> current = padding.thenRunAsync(() -> {
+            if (mode == RenderMode.EDGE)
+                engine.precomputeEdges(image, resolution);
+            if (mode != RenderMode.EDGE || luminance != Luminance.GAMMA)
+                engine.precomputeGreyness(image, resolution, luminance);
+        }, executor);
+        CompletableFuture<?> matcher = notes.length == 0 ? padding : CompletableFuture.runAsync(
+                () -> engine.precomputeMatcher(new ConversionSpec(resolution, notes)), executor);
+        // past the pixels the image was decoded with, "res up" decodes it again, so that is not precomputed here
+        CompletableFuture<?> up = resolution * 2 <= maxResolution && image.canRender(resolution * 2) ?
+                padding.thenRunAsync(() -> engine.precomputeGreyness(image, resolution * 2, luminance), executor) :
+                padding;
+        CompletableFuture<?> down = resolution / 2 >= minResolution ? padding.thenRunAsync(
+                () -> engine.precomputeGreyness(image, resolution / 2, luminance), executor) : padding;
+        steps = new CompletableFuture<?>[]{padding, current, matcher, up, down};
+    }
+
+    /**
+     * Describes how much of the work was already done.
+     * @return The description.
+     */
+    String report() {
+        int done = 0;
+        for (CompletableFuture<?> step : steps) {
+            if (step.isDone())
+                done++;
+        }
+        return "Precomputed " + done + " of " + steps.length + " steps in the background.";
+    }
+
+    /**
+     * Cancels the work that did not start yet, when its image is replaced before use.
+     */
+    void cancel() {
+        for (CompletableFuture<?> step : steps) {
+            step.cancel(false);
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package ascii_art;
+
+import image.Cancellation;
+import image.Image;
+import image.ImageRenderer;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+
+/**
+ * A conversion shown coarse to fine: previews at a quarter and at half of the
+ * resolution, by brightness from a few pixels of each sub-image, and then the ASCII
+ * art itself. Each level is shown as soon as it is ready, at the size of the final
+ * ASCII art (each char of a preview covers the chars of the final art it stands
+ * for), so an output that redraws in place only rewrites what the next level changed.
+ * If the greyness or edges of the resolution were already computed, only the final
+ * level is shown.
+ * A render can be cancelled, e.g. by the next command, after which it shows nothing
+ * more, and the conversion of the final level stops at the next row of sub-images (see
+ * AsciiArtEngine.convert with a Cancellation), so the next render does not wait for it.
+ * @author Daniel, Inbar
+ */
+class ProgressiveRender {
+    // the previews, as fractions of the resolution, coarsest first
+    private static final int[] PREVIEW_DIVISORS = {4, 2};
+    private static final int SAMPLES_PER_SIDE = 2;
+    private final CompletableFuture<?> levels;
+    private final Consumer<char[][]> output;
+    private final Cancellation cancellation = new Cancellation();
+
+    /**
+     * Starts a render.
+     * @param engine The engine that converts the image.
+     * @param image The image.
+     * @param spec The resolution, character set and mode of the final level.
+     * @param output Shows a level; called on a thread of the executor.
+     * @param executor The executor to run the render on.
+     */
+    ProgressiveRender(AsciiArtEngine engine, Image image, ConversionSpec spec, Consumer<char[][]> output,
+                      Executor executor) {
+        this.output = output;
+        levels = CompletableFuture.runAsync(() -> {
+            if (!engine.isComputed(image, spec)) {
+                int rows = ImageRenderer.of(image).getRows(spec.getResolution());
+                for (int divisor : PREVIEW_DIVISORS) {
+                    int resolution = spec.getResolution() / divisor;
+                    if (resolution < 1 || cancellation.isCancelled())
+                        continue;
+                    AsciiArt preview = engine.convertPreview(image,
+                            new ConversionSpec(resolution, spec.getCharset(), RenderMode.BRIGHTNESS,
+                                    spec.getLuminance()), SAMPLES_PER_SIDE);
+                    show(expand(preview, rows, spec.getResolution()));
+                }
+            }
+            if (!cancellation.isCancelled())
+                show(engine.convert(image, spec, cancellation).toCharArray());
+        }, executor);
+    }
+
+    /**
+     * Cancels the render. Once this returns, no level of it is shown any more.
+     */
+    synchronized void cancel() {
+        cancellation.cancel();
+    }
+
+    /**
+     * Waits until every level of the render was shown, or it was cancelled.
+     * @throws RuntimeException If a level failed, the exception it failed with.
+     */
+    void await() {
+        try {
+            levels.join();
+        } catch (CompletionException e) {
+            Throwable cause = failureOf(e);
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            if (cause != null)
+                throw e;
+        }
+    }
+
+    /**
+     * Calls a handler if a level fails, e.g. to report it when nothing awaits the render.
+     * A cancelled render does not fail.
+     * @param handler Handles the exception the level failed with; called on a thread of the executor.
+     */
+    void whenFailed(Consumer<Throwable> handler) {
+        levels.whenComplete((ignored, e) -> {
+            Throwable cause = failureOf(e);
+            if (cause != null)
+                handler.accept(cause);
+        });
+    }
+
+    /**
+     * Unwraps the exception a render completed with.
+     * @param e The exception, or null if the render completed normally.
+     * @return The exception a level failed with, or null if none failed or the render was cancelled.
+     */
+    private static Throwable failureOf(Throwable e) {
+        Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+        return cause instanceof CancellationException ? null : cause;
+    }
+
+    /**
+     * Shows a level, unless the render was cancelled.
+     * @param chars The level.
+     */
+    private synchronized void show(char[][] chars) {
+        if (!cancellation.isCancelled())
+            output.accept(chars);
+    }
+
+    /**
+     * Draws a preview at the size of the final ASCII art, each of its chars covering
+     * the chars of the final art whose sub-images start in its sub-image.
+     * @param preview The preview.
+     * @param rows The number of rows of the final art.
+     * @param columns The number of columns of the final art.
+     * @return The preview at the size of the final art.
+     */
+    private static char[][] expand(AsciiArt preview, int rows, int columns) {
+        char[][] chars = new char[rows][];
+        int expandedRow = -1;
+        for (int i = 0; i < rows; i++) {
+            int row = Math.min(i * preview.getRows() / rows, preview.getRows() - 1);
+            if (row == expandedRow) {
+                // the same row of the preview as the row above
+                chars[i] = chars[i - 1].clone();
+                continue;
+            }
+            chars[i] = new char[columns];
+            for (int j = 0; j < columns; j++) {
+                chars[i][j] = preview.charAt(row, j * preview.getColumns() / columns);
+            }
+            expandedRow = row;
+        }
+        return chars;
+    }
+}
@@ -0,0 +1,48 @@
+package ascii_art;
+
+/**
+ * How the sub-images of an image are matched to chars.
+ * @author Daniel, Inbar
+ */
+public enum RenderMode {
+    /** by brightness alone, with the chars of the character set */
+    BRIGHTNESS("brightness"),
+    /** sub-images with a strong straight edge as the directional chars | / - \ _,
+     * the others by brightness */
+    EDGE("edge"),
+    /** by brightness, carrying the difference between the greyness of each sub-image and
+     * the brightness of its char on to its neighbours (Floyd-Steinberg error diffusion), so
+     * a few chars draw smooth gradients instead of bands */
+    DITHER("dither");
+
+    private final String label;
+
+    /**
+     * constructor
+     * @param label The name of the mode in commands and requests.
+     */
+    RenderMode(String label) {
+        this.label = label;
+    }
+
+    /**
+     * Gets the name of the mode in commands and requests.
+     * @return The name.
+     */
+    public String getLabel() {
+        return label;
+    }
+
+    /**
+     * Finds a mode by its name.
+     * @param label The name of the mode.
+     * @return The mode, or null if there is no mode with that name.
+     */
+    public static RenderMode fromLabel(String label) {
+        for (RenderMode mode : values()) {
+            if (mode.label.equals(label))
+                return mode;
+        }
+        return null;
+    }
+}
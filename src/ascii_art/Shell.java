@@ -2,10 +2,23 @@ package ascii_art;
 import java.io.File;
 import java.util.TreeSet;
 import image.Image;
+import image.ImageCache;
+import image.ImageChange;
+import image.ImageRenderer;
+import image.Luminance;
+import image.PixelCache;
+import ascii_output.AnsiAsciiOutput;
 import ascii_output.ConsoleAsciiOutput;
+import ascii_output.FrameRateLimiter;
 import ascii_output.HtmlAsciiOutput;
+import ascii_output.RasterAsciiOutput;
 import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import Exceptions.*;
+import metrics.Metrics;
 
 /**
  * This class provides the user interface for running ASCII art generation.
@@ -18,12 +31,74 @@ public class Shell {
     private static final int DEFAULT_RESOLUTION = 128;
     private static final int COMMAND_INDEX = 0;
     private static final int COMMAND_MAX_LENGTH = 2;
+    private static final String SCRIPT_FILE_FLAG = "-f";
+    private static final int VIEWPORT_PARTS = 4;
+    // the widest image the png and jpeg outputs write, in pixels
+    private static final int MAX_RASTER_WIDTH = 4096;
+    // the most frames of a watched image the ansi output draws in a second
+    private static final int ANSI_FRAME_RATE = Integer.getInteger("ascii.ansiFrameRate", 30);
+    // the bytes the decoded images kept between image commands may retain, a quarter of the heap by default
+    private static final long IMAGE_CACHE_BYTES =
+            Long.getLong("ascii.imageCacheBytes", Runtime.getRuntime().maxMemory() / 4);
+    /** exit status of a script whose commands all succeeded */
+    public static final int EXIT_SUCCESS = 0;
+    /** exit status of a script that could not be read */
+    public static final int EXIT_SCRIPT_ERROR = 1;
+    /** exit status of a script with an invalid command */
+    public static final int EXIT_WRONG_COMMAND = 2;
+    /** exit status of a script with a command argument in an incorrect format */
+    public static final int EXIT_INCORRECT_FORMAT = 3;
+    /** exit status of a script that exceeded the resolution boundaries */
+    public static final int EXIT_OUT_OF_BOUNDARIES = 4;
+    /** exit status of a script that ran asciiArt with an empty charset */
+    public static final int EXIT_EMPTY_CHARSET = 5;
+    /** exit status of a script whose image could not be loaded */
+    public static final int EXIT_IMAGE_FILE = 6;
+    /** exit status of a script that failed unexpectedly */
+    public static final int EXIT_INTERNAL_ERROR = 70;
     private AsciiArtAlgorithm algorithm;
+    private final AsciiArtEngine engine = new AsciiArtEngine();
+    private final ImageCache images = new ImageCache(IMAGE_CACHE_BYTES, PixelCache.fromSystemProperties());
     private String imgPath;
     private int resolution;
     private String output;
+    private RenderMode mode = RenderMode.BRIGHTNESS;
+    private Luminance luminance = Luminance.GAMMA;
     private TreeSet<Character> charset;
     private Image image;
+    // the resolution the image was decoded for, see Image(filename, columns)
+    private int decodedResolution;
+    private AnsiAsciiOutput ansiOutput;
+    private Precomputation precomputation;
+    private final ExecutorService background = Executors.newSingleThreadExecutor(task -> {
+        Thread thread = new Thread(task, "precomputation");
+        thread.setDaemon(true);
+        return thread;
+    });
+    // progressive renders run here, so the shell can read the next command meanwhile
+    private final ExecutorService renderThread = Executors.newSingleThreadExecutor(task -> {
+        Thread thread = new Thread(task, "render");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private ProgressiveRender render;
+    // draws the ansi frames of the watched image that the frame rate limiter held back
+    private final ScheduledExecutorService frameTimer = Executors.newSingleThreadScheduledExecutor(task -> {
+        Thread thread = new Thread(task, "ansi frames");
+        thread.setDaemon(true);
+        return thread;
+    });
+    // the outputs are used by the shell, progressive renders and the watcher
+    private final Object outputLock = new Object();
+    private ImageWatcher watcher;
+    // the last ASCII art the watcher showed, of watchedImage with watchedSpec
+    private AsciiArt watchedArt;
+    private Image watchedImage;
+    private ConversionSpec watchedSpec;
+    private boolean progressive = false;
+    // the rectangle of chars asciiArt shows: first column, first row, width and height; null for all of them
+    private int[] viewport;
+    private boolean interactive = false;
     private boolean IsChangedImage = true;
     private boolean IsChangedNotes = true;
 
@@ -43,18 +118,64 @@ public class Shell {
         }
         this.output = "console";
         try {
-            this.image = new Image(imgPath);
+            this.image = images.get(imgPath, resolution);
+            decodedResolution = resolution;
+            startPrecomputation();
         } catch (IOException e) {
-            System.out.println("Error loading the image: " + e.getMessage());
+            System.err.println("Error loading the image: " + e.getMessage());
         }
     }
 
     /**
      * Helper method to execute commands received by the shell.
+     * Errors of a single command are printed, and the shell keeps running.
      * @param commandParts The array of command parts.
      * @throws WrongInputException If the input command is invalid.
      */
     private void runHelper(String[] commandParts) throws WrongInputException {
+        // a new command stops showing what is still being rendered
+        if (render != null) {
+            render.cancel();
+            render = null;
+        }
+        // the watcher changes the image between commands, never during one
+        synchronized (this) {
+            invalidateAnsiFrame();
+            try {
+                executeCommand(commandParts);
+            } catch (IncorrectFormatException | OutOfBoundariesException |
+                     EmptyCharsetException | ImageFileException e) {
+                System.out.println(e.getMessage());
+            } finally {
+                // a held back frame of the watcher may have been drawn while the command printed
+                invalidateAnsiFrame();
+            }
+        }
+    }
+
+    /**
+     * Tells the ansi output that the terminal moved under its last frame, e.g. because a
+     * command was typed or a message printed, so its next frame is drawn in full.
+     */
+    private void invalidateAnsiFrame() {
+        synchronized (outputLock) {
+            if (ansiOutput != null)
+                ansiOutput.invalidate();
+        }
+    }
+
+    /**
+     * Executes a single command.
+     * @param commandParts The array of command parts.
+     * @throws WrongInputException If the input command is invalid.
+     * @throws IncorrectFormatException If the argument of the command is in an incorrect format.
+     * @throws OutOfBoundariesException If the resolution change exceeds image boundaries.
+     * @throws EmptyCharsetException If the character set is empty.
+     * @throws ImageFileException If the image could not be loaded.
+     */
+    private void executeCommand(String[] commandParts) throws WrongInputException,
+            IncorrectFormatException, OutOfBoundariesException, EmptyCharsetException,
+            ImageFileException {
         if (commandParts.length > COMMAND_MAX_LENGTH)
             throw new WrongInputException("Did not execute due to incorrect command.");
         switch (commandParts[COMMAND_INDEX]) {
@@ -62,45 +183,46 @@ public class Shell {
                 displayCharset();
                 break;
             case "add":
-                try {
-                    addToCharset(commandParts[1]);
-                } catch (IncorrectFormatException e){
-                    System.out.println(e.getMessage());
-                }
+                addToCharset(getArgument(commandParts));
                 break;
             case "remove":
-                try {
-                    removeFromCharset(commandParts[1]);
-                } catch (IncorrectFormatException e){
-                    System.out.println(e.getMessage());
-                }
+                removeFromCharset(getArgument(commandParts));
                 break;
             case "res":
-                try {
-                    changeResolution(commandParts[1]);
-                } catch (IncorrectFormatException | OutOfBoundariesException e){
-                    System.out.println(e.getMessage());
-                }
+                checkImageLoaded();
+                changeResolution(getArgument(commandParts));
+                loadSamplesForResolution();
                 break;
             case "image":
-                try {
-                    changeImage(commandParts[1]);
-                }catch (IncorrectFormatException e){
-                    System.out.println(e.getMessage());
-                }
+                changeImage(getArgument(commandParts));
                 break;
             case "output":
-                try {
-                    changeOutput(commandParts[1]);
-                }catch (IncorrectFormatException e){
-                    System.out.println(e.getMessage());
-                }
+                changeOutput(getArgument(commandParts));
+                break;
+            case "mode":
+                changeMode(getArgument(commandParts));
+                break;
+            case "luminance":
+                changeLuminance(getArgument(commandParts));
+                break;
+            case "progressive":
+                changeProgressive(getArgument(commandParts));
+                break;
+            case "watch":
+                changeWatch(getArgument(commandParts));
+                break;
+            case "viewport":
+                changeViewport(getArgument(commandParts));
                 break;
             case "asciiArt":
-                try{
-                    runAsciiArt();
-                } catch (EmptyCharsetException e){
-                    System.out.println(e.getMessage());
+                checkImageLoaded();
+                runAsciiArt();
+                break;
+            case "stats":
+                System.out.print(Metrics.report());
+                synchronized (outputLock) {
+                    if (ansiOutput != null)
+                        System.out.print(ansiOutput.report());
                 }
                 break;
             default:
@@ -108,18 +230,42 @@ public class Shell {
         }
     }
 
+    /**
+     * Gets the argument of a command.
+     * @param commandParts The array of command parts.
+     * @return The argument.
+     * @throws IncorrectFormatException If the command has no argument.
+     */
+    private String getArgument(String[] commandParts) throws IncorrectFormatException {
+        if (commandParts.length < COMMAND_MAX_LENGTH)
+            throw new IncorrectFormatException("Did not execute due to incorrect format.");
+        return commandParts[1];
+    }
+
+    /**
+     * Checks that an image is loaded.
+     * @throws ImageFileException If no image could be loaded.
+     */
+    private void checkImageLoaded() throws ImageFileException {
+        if (image == null)
+            throw new ImageFileException("Did not execute due to problem with image file.");
+    }
+
     /**
      * Starts the ASCII art generation program.
      */
     public void run() {
+        interactive = true;
         System.out.print(">>> ");
         boolean running = true;
         while (running) {
             try {
                 String command = KeyboardInput.readLine();
                 String[] commandParts = command.split(" ");
-                if ((commandParts.length == 1) && (commandParts[0].equals("exit")))
+                if ((commandParts.length == 1) && (commandParts[0].equals("exit"))) {
                     running = false;
+                    stopWatching();
+                }
                 else{
                     System.out.print(">>> ");
                     runHelper(commandParts);
@@ -130,6 +276,66 @@ public class Shell {
         }
     }
 
+    /**
+     * Runs a script without user interaction.
+     * The commands run in order until the end of the script, an "exit" command,
+     * or the first command that fails. A script that ends while watching its image
+     * keeps showing the changes of the image until the program is stopped.
+     * @param script The parsed script.
+     * @return The exit status of the script, EXIT_SUCCESS if all the commands succeeded.
+     */
+    int runScript(ShellScript script) {
+        int commandNumber = 0;
+        for (String[] commandParts : script.getCommands()) {
+            commandNumber++;
+            if (commandParts[COMMAND_INDEX].equals("exit")) {
+                stopWatching();
+                break;
+            }
+            try {
+                synchronized (this) {
+                    executeCommand(commandParts);
+                }
+            } catch (Exception e) {
+                System.err.println("Command " + commandNumber + " (" + String.join(" ", commandParts) +
+                        "): " + e.getMessage());
+                stopWatching();
+                return exitStatusOf(e);
+            }
+        }
+        ImageWatcher running;
+        synchronized (this) {
+            running = watcher;
+        }
+        if (running != null) {
+            try {
+                running.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return EXIT_SUCCESS;
+    }
+
+    /**
+     * Maps the failure of a command to the exit status of a script.
+     * @param e The exception thrown by the command.
+     * @return The exit status.
+     */
+    private static int exitStatusOf(Exception e) {
+        if (e instanceof WrongInputException)
+            return EXIT_WRONG_COMMAND;
+        if (e instanceof IncorrectFormatException)
+            return EXIT_INCORRECT_FORMAT;
+        if (e instanceof OutOfBoundariesException)
+            return EXIT_OUT_OF_BOUNDARIES;
+        if (e instanceof EmptyCharsetException)
+            return EXIT_EMPTY_CHARSET;
+        if (e instanceof ImageFileException)
+            return EXIT_IMAGE_FILE;
+        return EXIT_INTERNAL_ERROR;
+    }
+
     /**
      * Displays the current character set.
      */
@@ -228,7 +434,7 @@ public class Shell {
     private void changeResolution(String input) throws IncorrectFormatException, OutOfBoundariesException {
         // minCharsInRow = max(1, imgWidth/imgHeight)
         int minCharsInRow = Math.max(1, image.getWidth() / image.getHeight());
-        int maxResolution = image.getWidth();
+        int maxResolution = getMaxResolution();
 
         if (input.equals("up")&& resolution*2 <= maxResolution) {
             resolution *= 2;
@@ -246,24 +452,46 @@ public class Shell {
         }
     }
 
+    /**
+     * Decodes the image again with more pixels if it was subsampled for a lower resolution
+     * than the current one, see Image(filename, columns).
+     * @throws ImageFileException If the image file could not be loaded.
+     */
+    private void loadSamplesForResolution() throws ImageFileException {
+        if (image.canRender(resolution))
+            return;
+        try {
+            image = images.get(imgPath, resolution);
+            decodedResolution = resolution;
+            IsChangedImage = true;
+            startPrecomputation();
+        } catch (IOException e) {
+            throw new ImageFileException("Did not execute due to problem with image file.");
+        }
+    }
+
     /**
      * Changes the image being processed.
      * @param input The input string specifying the new image path.
      * @throws IncorrectFormatException If the input format is incorrect.
+     * @throws ImageFileException If the image file could not be loaded.
      */
-    private void changeImage(String input) throws IncorrectFormatException {
+    private void changeImage(String input) throws IncorrectFormatException, ImageFileException {
         if (input.equals(imgPath))
             return;
 
         if (new File(input).exists()) {
-            imgPath = input;
             try {
-                Image img = new Image(input);
+                Image img = images.get(input, resolution);
                 imgPath = input;
                 image = img;
+                decodedResolution = resolution;
                 IsChangedImage = true;
+                startPrecomputation();
+                if (watcher != null)
+                    watch();
             }catch (IOException e) {
-                System.out.println("Did not execute due to problem with image file.");
+                throw new ImageFileException("Did not execute due to problem with image file.");
             }
         } else {
             throw new IncorrectFormatException("Did not change output method due to incorrect format.");
@@ -272,17 +500,221 @@ public class Shell {
 
     /**
      * Changes the output method.
-     * @param input The input string specifying the output method ("console" or "html").
+     * @param input The input string specifying the output method ("console", "ansi", "html", "png" or "jpeg").
      * @throws IncorrectFormatException If the input format is incorrect.
      */
     private void changeOutput(String input) throws IncorrectFormatException {
-        if (input.equals("console") || input.equals("html")) {
-            output = input;
+        if (input.equals("console") || input.equals("ansi") || input.equals("html") || input.equals("png") ||
+                input.equals("jpeg")) {
+            synchronized (outputLock) {
+                // another output overwrites the last frame, so the next ansi frame is drawn in full
+                if (!input.equals(output) && ansiOutput != null) {
+                    ansiOutput.discardPending();
+                    ansiOutput = null;
+                }
+                output = input;
+            }
         } else {
             throw new IncorrectFormatException("Did not change output method due to incorrect format.");
         }
     }
 
+    /**
+     * Changes how sub-images are matched to chars.
+     * @param input The input string specifying the mode ("brightness", "edge" or "dither").
+     * @throws IncorrectFormatException If the input format is incorrect.
+     */
+    private void changeMode(String input) throws IncorrectFormatException {
+        RenderMode newMode = RenderMode.fromLabel(input);
+        if (newMode == null)
+            throw new IncorrectFormatException("Did not change mode due to incorrect format.");
+        mode = newMode;
+        if (!IsChangedImage)
+            algorithm.SetMode(mode);
+    }
+
+    /**
+     * Changes how the greyness of sub-images is measured.
+     * @param input The input string specifying the luminance ("gamma" or "linear").
+     * @throws IncorrectFormatException If the input format is incorrect.
+     */
+    private void changeLuminance(String input) throws IncorrectFormatException {
+        Luminance newLuminance = Luminance.fromLabel(input);
+        if (newLuminance == null)
+            throw new IncorrectFormatException("Did not change luminance due to incorrect format.");
+        luminance = newLuminance;
+        if (!IsChangedImage)
+            algorithm.SetLuminance(luminance);
+    }
+
+    /**
+     * Turns progressive rendering on or off.
+     * @param input The input string, "on" or "off".
+     * @throws IncorrectFormatException If the input format is incorrect.
+     */
+    private void changeProgressive(String input) throws IncorrectFormatException {
+        if (input.equals("on") || input.equals("off"))
+            progressive = input.equals("on");
+        else
+            throw new IncorrectFormatException("Did not change progressive mode due to incorrect format.");
+    }
+
+    /**
+     * Sets the rectangle of chars asciiArt shows, e.g. to pan and zoom over a large image
+     * with "res" and "viewport": only the greyness of the tiles it covers is computed,
+     * see AsciiArtEngine.convertViewport.
+     * The rectangle may reach past the ASCII art, which clips it, but must start within it;
+     * after "res down" it may be past the art, and then shows nothing.
+     * @param input "column,row,width,height" in chars of the whole ASCII art, or "off" to show all of it.
+     * @throws IncorrectFormatException If the input format is incorrect.
+     * @throws OutOfBoundariesException If the rectangle starts outside the ASCII art of the image.
+     */
+    private void changeViewport(String input) throws IncorrectFormatException, OutOfBoundariesException {
+        if (input.equals("off")) {
+            viewport = null;
+            return;
+        }
+        String[] parts = input.split(",");
+        if (parts.length != VIEWPORT_PARTS)
+            throw new IncorrectFormatException("Did not change viewport due to incorrect format.");
+        int[] newViewport = new int[VIEWPORT_PARTS];
+        try {
+            for (int i = 0; i < VIEWPORT_PARTS; i++)
+                newViewport[i] = Integer.parseInt(parts[i]);
+        } catch (NumberFormatException e) {
+            throw new IncorrectFormatException("Did not change viewport due to incorrect format.");
+        }
+        if (newViewport[0] < 0 || newViewport[1] < 0 || newViewport[2] < 1 || newViewport[3] < 1)
+            throw new IncorrectFormatException("Did not change viewport due to incorrect format.");
+        if (image != null && (newViewport[0] >= resolution ||
+                newViewport[1] >= ImageRenderer.of(image).getRows(resolution)))
+            throw new OutOfBoundariesException("Did not change viewport due to exceeding boundaries.");
+        viewport = newViewport;
+    }
+
+    /**
+     * Turns watching the image file on or off. While it is on, the ASCII art is shown
+     * again with the current settings each time the file changes, see reloadWatchedImage.
+     * "watch on" also shows it right away.
+     * @param input The input string, "on" or "off".
+     * @throws IncorrectFormatException If the input format is incorrect.
+     * @throws ImageFileException If no image is loaded, or its file cannot be watched.
+     * @throws EmptyCharsetException If the character set is empty.
+     */
+    private void changeWatch(String input) throws IncorrectFormatException, ImageFileException,
+            EmptyCharsetException {
+        if (input.equals("off")) {
+            stopWatching();
+            return;
+        }
+        if (!input.equals("on"))
+            throw new IncorrectFormatException("Did not change watch mode due to incorrect format.");
+        checkImageLoaded();
+        if (charset.isEmpty())
+            throw new EmptyCharsetException("Did not execute. Charset is empty.");
+        watch();
+        showWatchedArt(null, null);
+    }
+
+    /**
+     * Starts watching the file of the current image, instead of the file watched before.
+     * @throws ImageFileException If the file cannot be watched.
+     */
+    private void watch() throws ImageFileException {
+        stopWatching();
+        try {
+            watcher = new ImageWatcher(Path.of(imgPath), this::reloadWatchedImage);
+        } catch (IOException e) {
+            throw new ImageFileException("Did not execute due to problem with image file.");
+        }
+    }
+
+    /**
+     * Stops watching the image file, if it is watched.
+     */
+    private synchronized void stopWatching() {
+        if (watcher != null) {
+            watcher.stop();
+            watcher = null;
+        }
+        watchedArt = null;
+        watchedImage = null;
+        watchedSpec = null;
+    }
+
+    /**
+     * Loads the watched image file again after it changed, and shows its ASCII art
+     * again. The new version inherits the greyness and edges of the previous one, and
+     * only the rows of chars whose pixels changed are computed again, see
+     * AsciiArtEngine.inherit and update. Called on the thread of the watcher.
+     */
+    private synchronized void reloadWatchedImage() {
+        if (watcher == null || image == null || charset.isEmpty())
+            return;
+        Image next;
+        try {
+            // decoded like the previous version, so their pixels can be compared
+            next = images.get(imgPath, decodedResolution);
+        } catch (IOException e) {
+            // e.g. a file that is still being written; its next change loads it again
+            printMessage("Did not reload the image due to problem with image file.");
+            return;
+        }
+        if (next == image)
+            return;
+        Image previous = image;
+        image = next;
+        IsChangedImage = true;
+        try {
+            showWatchedArt(previous, engine.inherit(previous, next));
+        } catch (RuntimeException e) {
+            // e.g. a new size the resolution or viewport no longer fits; the next change shows it again
+            watchedImage = null;
+            printMessage("Did not show the changed image with the current settings, still watching.");
+        }
+    }
+
+    /**
+     * Prints a message between commands, e.g. of the watcher or of a progressive render.
+     * @param message The message.
+     */
+    private void printMessage(String message) {
+        synchronized (outputLock) {
+            System.out.println(message);
+        }
+        invalidateAnsiFrame();
+    }
+
+    /**
+     * Shows the ASCII art of the image with the current settings, updated from the
+     * ASCII art the watcher showed last if that was of the previous version of the image,
+     * with the same settings. With a viewport, only the viewport is converted.
+     * @param previous The previous version of the image, or null to convert in full.
+     * @param change The change from the previous version, or null to convert in full.
+     */
+    private void showWatchedArt(Image previous, ImageChange change) {
+        ConversionSpec spec = new ConversionSpec(resolution, ChangeNotes(), mode, luminance);
+        if (viewport != null) {
+            // a viewport only computes the tiles it covers, of the new version as well
+            watchedImage = null;
+            showFrame(engine.convertViewport(image, spec, viewport[1], viewport[0], viewport[3], viewport[2])
+                    .toCharArray());
+            return;
+        }
+        AsciiArt art;
+        if (change != null && watchedImage == previous && spec.equals(watchedSpec)) {
+            if (change.isEmpty())
+                return;
+            art = engine.update(image, spec, watchedArt, change);
+        } else {
+            art = engine.convert(image, spec);
+        }
+        watchedArt = art;
+        watchedImage = image;
+        watchedSpec = spec;
+        showFrame(art.toCharArray());
+    }
+
     /**
      * Runs the ASCII art generation algorithm.
      * @throws EmptyCharsetException If the character set is empty.
@@ -303,21 +735,114 @@ public class Shell {
             IsChangedNotes = false;
             IsChangedImage = false;
             char[] notes = ChangeNotes();
-            alg = new AsciiArtAlgorithm(image, resolution, notes);
+            if (precomputation != null) {
+                if (interactive)
+                    System.out.println(precomputation.report());
+                precomputation = null;
+            }
+            alg = new AsciiArtAlgorithm(engine, image, resolution, notes);
+            alg.SetMode(mode);
+            alg.SetLuminance(luminance);
             algorithm = alg;
         }
-        char[][] arr = alg.run();
-        // Check if the output type is HTML or console
-        if (output.equals("html")) {
-            HtmlAsciiOutput htmlOutput = new HtmlAsciiOutput("out.html", "Courier New");
-            htmlOutput.out(arr); // Output to HTML
-        } else {
-            // Output to console
-            ConsoleAsciiOutput consoleOutput = new ConsoleAsciiOutput();
-            consoleOutput.out(arr);
+        if (viewport != null) {
+            showArt(alg.runViewport(viewport[1], viewport[0], viewport[3], viewport[2]));
+            return;
+        }
+        if (progressive) {
+            renderProgressively(new ConversionSpec(resolution, ChangeNotes(), mode, luminance));
+            return;
+        }
+        showArt(alg.run());
+    }
+
+    /**
+     * Shows ASCII art coarse to fine, see ProgressiveRender. In the interactive shell
+     * the render runs in the background until the next command; a script waits for it.
+     * @param spec The resolution, character set, mode and luminance of the ASCII art.
+     */
+    private void renderProgressively(ConversionSpec spec) {
+        render = new ProgressiveRender(engine, image, spec, this::showArt, renderThread);
+        if (!interactive) {
+            render.await();
+            render = null;
+            return;
+        }
+        // nothing waits for the render, so its failure is reported when it happens
+        render.whenFailed(failure -> printMessage("Did not finish rendering due to an unexpected error."));
+    }
+
+    /**
+     * Shows ASCII art with the current output method.
+     * @param arr The ASCII art.
+     */
+    private void showArt(char[][] arr) {
+        show(arr, false);
+    }
+
+    /**
+     * Shows a frame of the watched image with the current output method. The ansi
+     * output holds it back if the terminal is still behind on the frames before it, see
+     * FrameRateLimiter, and draws it once the terminal caught up, unless a later frame
+     * replaced it by then.
+     * @param arr The ASCII art.
+     */
+    private void showFrame(char[][] arr) {
+        show(arr, true);
+    }
+
+    /**
+     * Shows ASCII art with the current output method.
+     * @param arr The ASCII art.
+     * @param frame Whether it is a frame the ansi output may drop.
+     */
+    private void show(char[][] arr, boolean frame) {
+        synchronized (outputLock) {
+            // Check if the output type is HTML, an image, ANSI terminal or console
+            if (output.equals("html")) {
+                HtmlAsciiOutput htmlOutput = new HtmlAsciiOutput("out.html", "Courier New");
+                htmlOutput.out(arr); // Output to HTML
+            } else if (output.equals("png") || output.equals("jpeg")) {
+                // an image of at most MAX_RASTER_WIDTH pixels, with full size glyphs if they fit
+                int columns = arr.length == 0 ? 0 : arr[0].length;
+                new RasterAsciiOutput("out." + output, RasterAsciiOutput.cellSizeFor(columns, MAX_RASTER_WIDTH))
+                        .out(arr);
+            } else if (output.equals("ansi")) {
+                // the same output is kept between runs, so only the changed cells are redrawn
+                if (ansiOutput == null)
+                    ansiOutput = new AnsiAsciiOutput(System.out, new FrameRateLimiter(ANSI_FRAME_RATE), frameTimer);
+                if (frame)
+                    ansiOutput.outFrame(arr);
+                else
+                    ansiOutput.out(arr);
+            } else {
+                // Output to console
+                ConsoleAsciiOutput consoleOutput = new ConsoleAsciiOutput();
+                consoleOutput.out(arr);
+            }
         }
     }
 
+    /**
+     * Starts precomputing for the loaded image in the background, replacing the
+     * precomputation of a previous image that was not used.
+     */
+    private void startPrecomputation() {
+        if (precomputation != null)
+            precomputation.cancel();
+        int minCharsInRow = Math.max(1, image.getWidth() / image.getHeight());
+        precomputation = new Precomputation(engine, image, resolution, minCharsInRow, getMaxResolution(),
+                ChangeNotes(), mode, luminance, background);
+    }
+
+    /**
+     * Gets the highest resolution of the loaded image, the bound of "res up".
+     * @return The width of the image in its file, up to a step between its decoded pixels.
+     */
+    private int getMaxResolution() {
+        return image.getWidth() * image.getSubsampling();
+    }
+
     /**
      * makes a new notes arr
      * @return the notes
@@ -334,11 +859,35 @@ public class Shell {
 
     /**
      * Main method to start the program.
-     * @param args Command line arguments (not used).
+     * Without arguments the shell runs interactively. Otherwise the arguments are
+     * a script to run, either "-f" followed by the path of a script file, or the
+     * commands themselves, e.g. "image x.jpg; res up; add all; output html; asciiArt".
+     * The exit status of a script is one of the EXIT_ constants.
+     * @param args Command line arguments.
      */
     public static void main(String[] args) {
+        if (args.length == 0) {
+            Shell asciiArtShell = new Shell();
+            asciiArtShell.run();
+            return;
+        }
+        ShellScript script;
+        try {
+            if (args[0].equals(SCRIPT_FILE_FLAG) && args.length == 2)
+                script = ShellScript.read(args[1]);
+            else
+                script = ShellScript.parse(String.join(" ", args));
+        } catch (IOException e) {
+            System.err.println("Could not read the script: " + e.getMessage());
+            System.exit(EXIT_SCRIPT_ERROR);
+            return;
+        } catch (WrongInputException e) {
+            System.err.println(e.getMessage());
+            System.exit(EXIT_WRONG_COMMAND);
+            return;
+        }
         Shell asciiArtShell = new Shell();
-        asciiArtShell.run();
+        System.exit(asciiArtShell.runScript(script));
     }
 }
 
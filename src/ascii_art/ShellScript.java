@@ -0,0 +1,79 @@
+package ascii_art;
+
+import Exceptions.WrongInputException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A script of shell commands, parsed once before any of them runs.
+ * Commands are separated by ';' or by new lines, and lines starting with '#'
+ * are comments, e.g. "image x.jpg; res up; add all; output html; asciiArt".
+ * Parsing checks the names and number of arguments of all the commands, so a
+ * wrong command is reported before the earlier commands do any work.
+ * @author Daniel, Inbar
+ */
+class ShellScript {
+    private static final String COMMAND_SEPARATOR = "[;\\n]";
+    private static final String COMMENT_PREFIX = "#";
+    private static final Map<String, Integer> COMMAND_ARGUMENTS = Map.ofEntries(
+            Map.entry("exit", 0), Map.entry("chars", 0), Map.entry("asciiArt", 0), Map.entry("stats", 0),
+            Map.entry("add", 1), Map.entry("remove", 1), Map.entry("res", 1), Map.entry("image", 1),
+            Map.entry("output", 1), Map.entry("mode", 1), Map.entry("luminance", 1),
+            Map.entry("progressive", 1), Map.entry("watch", 1),
+            Map.entry("viewport", 1));
+
+    private final List<String[]> commands;
+
+    /**
+     * Constructs a script from already validated commands.
+     * @param commands The commands, split into their parts.
+     */
+    private ShellScript(List<String[]> commands) {
+        this.commands = Collections.unmodifiableList(commands);
+    }
+
+    /**
+     * Parses a script.
+     * @param script The text of the script.
+     * @return The parsed script.
+     * @throws WrongInputException If one of the commands is invalid.
+     */
+    static ShellScript parse(String script) throws WrongInputException {
+        List<String[]> commands = new ArrayList<>();
+        for (String line : script.split(COMMAND_SEPARATOR)) {
+            String command = line.trim();
+            if (command.isEmpty() || command.startsWith(COMMENT_PREFIX))
+                continue;
+            String[] commandParts = command.split(" +");
+            Integer arguments = COMMAND_ARGUMENTS.get(commandParts[0]);
+            if (arguments == null || commandParts.length != arguments + 1)
+                throw new WrongInputException("Did not execute due to incorrect command: " + command);
+            commands.add(commandParts);
+        }
+        return new ShellScript(commands);
+    }
+
+    /**
+     * Reads and parses a script file.
+     * @param path The path of the script file.
+     * @return The parsed script.
+     * @throws IOException If the file could not be read.
+     * @throws WrongInputException If one of the commands is invalid.
+     */
+    static ShellScript read(String path) throws IOException, WrongInputException {
+        return parse(Files.readString(Path.of(path)));
+    }
+
+    /**
+     * Gets the commands of the script.
+     * @return The commands, each split into its parts.
+     */
+    List<String[]> getCommands() {
+        return commands;
+    }
+}
@@ -0,0 +1,351 @@
+package ascii_output;
+
+import metrics.Metrics;
+import metrics.Stage;
+import metrics.StageTimer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Output a 2D array of chars to an ANSI terminal as a live frame.
+ * The last frame is kept on screen, and each new frame only rewrites the cells
+ * that changed. Changed cells on the same row are merged into a single run, bridging
+ * unchanged cells whenever rewriting them is cheaper than another cursor move.
+ * Cells are laid out like in ConsoleAsciiOutput, each char followed by a space.
+ * <p>
+ * The cursor is moved relative to where the last frame left it, the row under the
+ * frame, and restored there afterwards, so a prompt typed under the frame stays in place.
+ * That is only known while nothing else was printed since the last frame: invalidate
+ * tells the output otherwise, and the next frame clears the screen and is drawn in full.
+ * So is every frame that does not fit the terminal (-Dascii.terminalRows=N rows, or
+ * $LINES, 24 by default), since drawing it scrolls the terminal.
+ * <p>
+ * Frames of an animation, e.g. of a watched image, are written with outFrame, which
+ * keeps a frame as pending while the terminal is behind (see FrameRateLimiter) and
+ * draws the latest pending frame once the limiter admits it; out writes every frame.
+ * Safe to use from any thread.
+ * @author Daniel, Inbar
+ */
+public class AnsiAsciiOutput implements AsciiOutput {
+    private static final String CSI = "\u001b[";
+    private static final String CLEAR_SCREEN = CSI + "2J" + CSI + "H";
+    // DECSC and DECRC, supported more widely than CSI s and CSI u
+    private static final String SAVE_CURSOR = "\u001b7";
+    private static final String RESTORE_CURSOR = "\u001b8";
+    private static final int CELL_WIDTH = 2;
+    private static final int DEFAULT_TERMINAL_ROWS = 24;
+    private static final int TERMINAL_ROWS = Integer.getInteger("ascii.terminalRows", rowsFromEnvironment());
+
+    private final OutputStream stream;
+    private final FrameRateLimiter limiter;
+    private final ScheduledExecutorService scheduler;
+    private final int terminalRows;
+    // the frame on screen, right above the cursor row, or null if where it is is not known
+    private char[][] screen;
+    // the row the cursor is at while a frame is written, relative to the top of the frame
+    private int cursorRow;
+    // the latest frame the limiter did not admit yet, or null
+    private char[][] pending;
+    private boolean flushScheduled;
+    private long lastFrameBytes;
+    private long totalBytes;
+    private long writtenFrames;
+    private long droppedFrames;
+
+    /**
+     * Constructs an output to the console that writes every frame.
+     */
+    public AnsiAsciiOutput() {
+        this(System.out, null, null, TERMINAL_ROWS);
+    }
+
+    /**
+     * Constructs an output to the given terminal stream, of the number of rows of the terminal.
+     * @param stream The stream of the terminal.
+     * @param limiter The frame rate limiter, or null to write every frame.
+     * @param scheduler Draws pending frames once the limiter admits them; with null, a
+     *                  pending frame is only replaced by the next frame.
+     */
+    public AnsiAsciiOutput(OutputStream stream, FrameRateLimiter limiter, ScheduledExecutorService scheduler) {
+        this(stream, limiter, scheduler, TERMINAL_ROWS);
+    }
+
+    /**
+     * Constructs an output to the given terminal stream.
+     * @param stream The stream of the terminal.
+     * @param limiter The frame rate limiter, or null to write every frame.
+     * @param scheduler Draws pending frames once the limiter admits them; with null, a
+     *                  pending frame is only replaced by the next frame.
+     * @param terminalRows The number of rows of the terminal.
+     */
+    public AnsiAsciiOutput(OutputStream stream, FrameRateLimiter limiter, ScheduledExecutorService scheduler,
+                           int terminalRows) {
+        this.stream = stream;
+        this.limiter = limiter;
+        this.scheduler = scheduler;
+        this.terminalRows = terminalRows;
+    }
+
+    @Override
+    public synchronized void out(char[][] chars) {
+        discardPending();
+        write(chars, System.nanoTime());
+    }
+
+    /**
+     * Writes a frame of an animation, or keeps it as pending if the terminal fell behind,
+     * replacing the frame pending before, which is dropped. The pending frame is drawn as
+     * soon as the frame rate limiter admits it.
+     * @param chars The frame.
+     * @return True if the frame was written now, false if it is pending.
+     */
+    public synchronized boolean outFrame(char[][] chars) {
+        long start = System.nanoTime();
+        if (limiter == null || limiter.admit(start)) {
+            discardPending();
+            write(chars, start);
+            return true;
+        }
+        discardPending();
+        pending = chars;
+        if (scheduler != null && !flushScheduled) {
+            flushScheduled = true;
+            scheduler.schedule(this::flushPending, limiter.nanosUntilAdmitted(start), TimeUnit.NANOSECONDS);
+        }
+        return false;
+    }
+
+    /**
+     * Drops the pending frame, if any, e.g. when the terminal is used for another output.
+     */
+    public synchronized void discardPending() {
+        if (pending != null) {
+            droppedFrames++;
+            pending = null;
+        }
+    }
+
+    /**
+     * Tells the output that something else was printed to the terminal, so where the
+     * last frame is on screen is no longer known; the next frame is drawn in full.
+     */
+    public synchronized void invalidate() {
+        screen = null;
+    }
+
+    /**
+     * Builds a report of the frames written and dropped and of their bytes.
+     * @return The report, one line.
+     */
+    public synchronized String report() {
+        return String.format("ansi: %d frames written, %d dropped, %d bytes in the last frame, %d per frame%n",
+                writtenFrames, droppedFrames, lastFrameBytes, writtenFrames == 0 ? 0 : totalBytes / writtenFrames);
+    }
+
+    /**
+     * Draws the pending frame once the limiter admits it. Runs on the scheduler.
+     */
+    private synchronized void flushPending() {
+        flushScheduled = false;
+        if (pending == null)
+            return;
+        long start = System.nanoTime();
+        if (!limiter.admit(start)) {
+            flushScheduled = true;
+            scheduler.schedule(this::flushPending, limiter.nanosUntilAdmitted(start), TimeUnit.NANOSECONDS);
+            return;
+        }
+        char[][] chars = pending;
+        pending = null;
+        write(chars, start);
+    }
+
+    /**
+     * Writes a frame, only the cells that changed since the last one if it is still on screen.
+     * @param chars The frame.
+     * @param start The time the frame was offered, as given by System.nanoTime().
+     */
+    private void write(char[][] chars, long start) {
+        StageTimer timer = Metrics.start(Stage.OUTPUT);
+        StringBuilder frame = new StringBuilder();
+        // the frame and the cursor row under it must fit, or drawing it scrolls
+        boolean fits = chars.length < terminalRows;
+        if (screen != null && fits && sameDimensions(chars)) {
+            frame.append(SAVE_CURSOR);
+            cursorRow = chars.length;
+            for (int y = 0; y < chars.length; y++) {
+                appendRowChanges(frame, chars, y);
+            }
+            frame.append(RESTORE_CURSOR);
+        } else {
+            frame.append(CLEAR_SCREEN);
+            for (char[] row : chars) {
+                for (char c : row) {
+                    frame.append(c).append(' ');
+                }
+                frame.append("\r\n");
+            }
+        }
+
+        byte[] bytes = frame.toString().getBytes(StandardCharsets.UTF_8);
+        try {
+            stream.write(bytes);
+            stream.flush();
+        } catch (IOException e) {
+            Logger.getGlobal().severe("Failed to write frame to terminal");
+            screen = null;
+            return;
+        }
+        screen = fits ? copyOf(chars) : null;
+        lastFrameBytes = bytes.length;
+        totalBytes += bytes.length;
+        writtenFrames++;
+        if (limiter != null)
+            limiter.frameWritten(start, System.nanoTime());
+        Metrics.stop(timer, bytes.length);
+    }
+
+    /**
+     * Gets the number of bytes written for the last written frame.
+     * @return The number of bytes.
+     */
+    public synchronized long getLastFrameBytes() {
+        return lastFrameBytes;
+    }
+
+    /**
+     * Gets the number of bytes written for all frames.
+     * @return The number of bytes.
+     */
+    public synchronized long getTotalBytes() {
+        return totalBytes;
+    }
+
+    /**
+     * Gets the number of frames that were written.
+     * @return The number of frames.
+     */
+    public synchronized long getWrittenFrames() {
+        return writtenFrames;
+    }
+
+    /**
+     * Gets the number of frames that were dropped, replaced by a later frame before
+     * the frame rate limiter admitted them.
+     * @return The number of frames.
+     */
+    public synchronized long getDroppedFrames() {
+        return droppedFrames;
+    }
+
+    /**
+     * Appends the runs of changed cells of one row.
+     * @param frame The frame being built.
+     * @param chars The new frame.
+     * @param y The row.
+     */
+    private void appendRowChanges(StringBuilder frame, char[][] chars, int y) {
+        int x = nextChanged(chars, y, 0);
+        while (x < chars[y].length) {
+            int runEnd = x + 1;
+            int next = nextChanged(chars, y, runEnd);
+            // extend the run over unchanged cells while that is cheaper than moving the cursor
+            while (next < chars[y].length && (next == runEnd ||
+                    (next - runEnd) * CELL_WIDTH <= columnTo(next).length())) {
+                runEnd = next + 1;
+                next = nextChanged(chars, y, runEnd);
+            }
+            appendMove(frame, y, x);
+            for (int i = x; i < runEnd; i++) {
+                frame.append(chars[y][i]).append(' ');
+            }
+            x = next;
+        }
+    }
+
+    /**
+     * Appends the escape sequences that move the cursor to a cell: up or down from the
+     * row it is at, which is not affected by the terminal scrolling, and to its column.
+     * @param frame The frame being built.
+     * @param y The row of the cell, relative to the top of the frame.
+     * @param x The column of the cell.
+     */
+    private void appendMove(StringBuilder frame, int y, int x) {
+        if (y < cursorRow)
+            frame.append(CSI).append(cursorRow - y).append('A');
+        else if (y > cursorRow)
+            frame.append(CSI).append(y - cursorRow).append('B');
+        cursorRow = y;
+        frame.append(columnTo(x));
+    }
+
+    /**
+     * Finds the next cell of a row that differs from the screen.
+     * @param chars The new frame.
+     * @param y The row.
+     * @param from The column to start from.
+     * @return The column of the changed cell, or the row length if there is none.
+     */
+    private int nextChanged(char[][] chars, int y, int from) {
+        int x = from;
+        while (x < chars[y].length && chars[y][x] == screen[y][x]) {
+            x++;
+        }
+        return x;
+    }
+
+    /**
+     * Builds the escape sequence that moves the cursor to a column of cells, on its row.
+     * @param x The column of the cell.
+     * @return The escape sequence.
+     */
+    private static String columnTo(int x) {
+        return CSI + (x * CELL_WIDTH + 1) + "G";
+    }
+
+    /**
+     * Checks whether the given frame has the dimensions of the screen.
+     * @param chars The new frame.
+     * @return True if the dimensions are the same.
+     */
+    private boolean sameDimensions(char[][] chars) {
+        if (screen.length != chars.length)
+            return false;
+        for (int y = 0; y < chars.length; y++) {
+            if (screen[y].length != chars[y].length)
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Copies a frame, to keep it as the frame on screen.
+     * @param chars The frame.
+     * @return The copy.
+     */
+    private static char[][] copyOf(char[][] chars) {
+        char[][] copy = new char[chars.length][];
+        for (int y = 0; y < chars.length; y++) {
+            copy[y] = chars[y].clone();
+        }
+        return copy;
+    }
+
+    /**
+     * Reads the number of rows of the terminal from $LINES, which shells set.
+     * @return The number of rows, or DEFAULT_TERMINAL_ROWS if it is not set.
+     */
+    private static int rowsFromEnvironment() {
+        try {
+            String lines = System.getenv("LINES");
+            return lines == null ? DEFAULT_TERMINAL_ROWS : Integer.parseInt(lines.trim());
+        } catch (NumberFormatException e) {
+            return DEFAULT_TERMINAL_ROWS;
+        }
+    }
+}
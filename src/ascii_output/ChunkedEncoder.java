@@ -0,0 +1,178 @@
+package ascii_output;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.charset.Charset;
+import java.util.stream.IntStream;
+
+/**
+ * Encodes ASCII art in the format of a text output in chunks of rows, in parallel,
+ * and writes the chunks in order with a single gathering write.
+ * A format is given as its header, its rows and its footer, the same parts its
+ * sequential writer writes one after the other, so the bytes are the same as those
+ * of the sequential writer with the same charset. Art smaller than one chunk is
+ * encoded on the calling thread.
+ * @author Daniel, Inbar
+ */
+final class ChunkedEncoder {
+    // about this many chars of art in a chunk
+    private static final int CHUNK_CHARS = 1 << 16;
+
+    /**
+     * A part of a format that does not depend on the rows, the header or the footer.
+     */
+    @FunctionalInterface
+    interface Part {
+        /**
+         * Writes the part.
+         * @param chars The ASCII art.
+         * @param out Where to write it.
+         * @throws IOException If writing failed.
+         */
+        void write(char[][] chars, Appendable out) throws IOException;
+    }
+
+    /**
+     * The rows of a format.
+     */
+    @FunctionalInterface
+    interface Rows {
+        /**
+         * Writes some of the rows.
+         * @param chars The ASCII art.
+         * @param from The first row to write.
+         * @param to The row after the last row to write.
+         * @param out Where to write them.
+         * @throws IOException If writing failed.
+         */
+        void write(char[][] chars, int from, int to, Appendable out) throws IOException;
+    }
+
+    /**
+     * Not instantiable.
+     */
+    private ChunkedEncoder() {
+    }
+
+    /**
+     * Encodes ASCII art: the header, the chunks of rows and the footer.
+     * @param chars The ASCII art.
+     * @param header The header of the format.
+     * @param rows The rows of the format.
+     * @param footer The footer of the format.
+     * @param charset The charset to encode with.
+     * @return The encoded parts, in order.
+     */
+    static ByteBuffer[] encode(char[][] chars, Part header, Rows rows, Part footer, Charset charset) {
+        int columns = chars.length == 0 ? 0 : chars[0].length;
+        int rowsInChunk = Math.max(1, CHUNK_CHARS / Math.max(1, columns));
+        int chunks = (chars.length + rowsInChunk - 1) / rowsInChunk;
+        ByteBuffer[] buffers = new ByteBuffer[chunks + 2];
+        buffers[0] = encodePart(chars, header, charset);
+        IntStream range = IntStream.range(0, chunks);
+        (chunks > 1 ? range.parallel() : range).forEach(chunk -> {
+            int from = chunk * rowsInChunk;
+            int to = Math.min(chars.length, from + rowsInChunk);
+            StringBuilder text = new StringBuilder((to - from) * (columns + 2));
+            try {
+                rows.write(chars, from, to, text);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            buffers[chunk + 1] = ByteBuffer.wrap(text.toString().getBytes(charset));
+        });
+        buffers[chunks + 1] = encodePart(chars, footer, charset);
+        return buffers;
+    }
+
+    /**
+     * Writes encoded parts to a channel, in order.
+     * @param buffers The encoded parts.
+     * @param channel The channel. It is not closed.
+     * @return The number of bytes written.
+     * @throws IOException If writing failed.
+     */
+    static long write(ByteBuffer[] buffers, GatheringByteChannel channel) throws IOException {
+        long remaining = 0;
+        for (ByteBuffer buffer : buffers)
+            remaining += buffer.remaining();
+        long written = 0;
+        // a channel may write fewer bytes than it was given
+        while (written < remaining)
+            written += channel.write(buffers);
+        return written;
+    }
+
+    /**
+     * Encodes the header or the footer.
+     * @param chars The ASCII art.
+     * @param part The part.
+     * @param charset The charset to encode with.
+     * @return The encoded part.
+     */
+    private static ByteBuffer encodePart(char[][] chars, Part part, Charset charset) {
+        StringBuilder text = new StringBuilder();
+        try {
+            part.write(chars, text);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return ByteBuffer.wrap(text.toString().getBytes(charset));
+    }
+
+    /**
+     * A gathering channel over a stream such as System.out, which has no channel of its
+     * own. It writes the arrays of the buffers to the stream directly, without copying them.
+     */
+    static final class StreamChannel implements GatheringByteChannel {
+        private final OutputStream stream;
+
+        /**
+         * constructor
+         * @param stream The stream to write to. It is not closed with the channel.
+         */
+        StreamChannel(OutputStream stream) {
+            this.stream = stream;
+        }
+
+        @Override
+        public long write(ByteBuffer[] sources, int offset, int length) throws IOException {
+            long written = 0;
+            for (int i = offset; i < offset + length; i++)
+                written += write(sources[i]);
+            return written;
+        }
+
+        @Override
+        public long write(ByteBuffer[] sources) throws IOException {
+            return write(sources, 0, sources.length);
+        }
+
+        @Override
+        public int write(ByteBuffer source) throws IOException {
+            int length = source.remaining();
+            if (source.hasArray()) {
+                stream.write(source.array(), source.arrayOffset() + source.position(), length);
+                source.position(source.limit());
+            } else {
+                byte[] bytes = new byte[length];
+                source.get(bytes);
+                stream.write(bytes);
+            }
+            return length;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+            // the stream belongs to the caller
+        }
+    }
+}
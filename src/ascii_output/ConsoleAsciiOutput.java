@@ -1,18 +1,57 @@
 package ascii_output;
 
-// Import the AsciiOutput interface
-import ascii_output.AsciiOutput;
+import metrics.Metrics;
+import metrics.Stage;
+import metrics.StageTimer;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.util.logging.Logger;
+
 /**
  * Output a 2D array of chars to the console.
+ * The rows are encoded in chunks in parallel (see ChunkedEncoder), in the charset of
+ * System.out, byte for byte as write would encode them.
  * @author Dan Nirel
- */public class ConsoleAsciiOutput implements AsciiOutput {
+ */
+public class ConsoleAsciiOutput implements TextAsciiOutput {
     @Override
     public void out(char[][] chars) {
-        for (int y = 0; y < chars.length ; y++) {
+        StageTimer timer = Metrics.start(Stage.OUTPUT);
+        ByteBuffer[] buffers = ChunkedEncoder.encode(chars, (art, out) -> { }, this::writeRows,
+                (art, out) -> { }, System.out.charset());
+        long bytes = 0;
+        try {
+            bytes = ChunkedEncoder.write(buffers, new ChunkedEncoder.StreamChannel(System.out));
+            System.out.flush();
+        } catch (IOException e) {
+            Logger.getGlobal().severe("Failed to write to the console");
+        }
+        Metrics.stop(timer, bytes);
+    }
+
+    @Override
+    public void write(char[][] chars, Writer writer) throws IOException {
+        writeRows(chars, 0, chars.length, writer);
+    }
+
+    /**
+     * Writes rows, each char followed by a space.
+     * @param chars The chars to write.
+     * @param from The first row to write.
+     * @param to The row after the last row to write.
+     * @param out Where to write.
+     * @throws IOException If writing failed.
+     */
+    private void writeRows(char[][] chars, int from, int to, Appendable out) throws IOException {
+        String lineSeparator = System.lineSeparator();
+        for (int y = from; y < to ; y++) {
             for (int x = 0; x < chars[y].length; x++) {
-                System.out.print(chars[y][x] + " ");
+                out.append(chars[y][x]);
+                out.append(' ');
             }
-            System.out.println();
+            out.append(lineSeparator);
         }
     }
 }
@@ -0,0 +1,59 @@
+package ascii_output;
+
+/**
+ * Decides which frames of an animation are written to a terminal.
+ * A frame is admitted only once the frame interval has passed since the last
+ * admitted frame. When writing a frame took longer than the interval (the
+ * terminal fell behind), the next frames are dropped for the overrun as well,
+ * so the terminal can catch up instead of lagging further behind the animation.
+ * @author Daniel, Inbar
+ */
+public class FrameRateLimiter {
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+
+    private final long frameIntervalNanos;
+    private long nextFrameTime;
+    private boolean started = false;
+
+    /**
+     * Constructs a limiter for the given frame rate.
+     * @param framesPerSecond The maximal number of frames to admit per second.
+     */
+    public FrameRateLimiter(double framesPerSecond) {
+        if (framesPerSecond <= 0)
+            throw new IllegalArgumentException("Frame rate must be positive.");
+        this.frameIntervalNanos = (long) (NANOS_PER_SECOND / framesPerSecond);
+    }
+
+    /**
+     * Checks whether a frame offered now should be written.
+     * @param now The current time, as given by System.nanoTime().
+     * @return True if the frame should be written, false if it should be dropped.
+     */
+    public boolean admit(long now) {
+        return !started || now - nextFrameTime >= 0;
+    }
+
+    /**
+     * Finds how long a frame offered now would wait to be admitted.
+     * @param now The current time, as given by System.nanoTime().
+     * @return The wait in nanoseconds, 0 if the frame is admitted now.
+     */
+    public long nanosUntilAdmitted(long now) {
+        return started ? Math.max(0, nextFrameTime - now) : 0;
+    }
+
+    /**
+     * Records that an admitted frame was written.
+     * @param start The time the write started, as given by System.nanoTime().
+     * @param end The time the write ended, as given by System.nanoTime().
+     */
+    public void frameWritten(long start, long end) {
+        started = true;
+        long overrun = (end - start) - frameIntervalNanos;
+        if (overrun > 0)
+            nextFrameTime = end + overrun;
+        else
+            nextFrameTime = start + frameIntervalNanos;
+    }
+}
@@ -0,0 +1,132 @@
+package ascii_output;
+
+import image_char_matching.CharConverter;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The glyphs of the chars of some ASCII art, rendered once into one array of pixels,
+ * one glyph after the other and each row by row, so a row of a glyph can be copied
+ * into an image with a single System.arraycopy.
+ * Glyphs come from the glyph table of the char matcher (see CharConverter) and are
+ * drawn black on white; a cell smaller than a glyph takes the mean of the glyph pixels
+ * it covers, a grey level. The glyph of each char at each cell size is rendered once
+ * for all atlases.
+ * @author Daniel, Inbar
+ */
+final class GlyphAtlas {
+    /** the side of a glyph as rendered, in pixels; the largest cell size */
+    static final int GLYPH_SIZE = CharConverter.DEFAULT_PIXEL_RESOLUTION;
+    private static final int WHITE = 0xFF;
+    // the chars below this are found by a table lookup, the others by a binary search
+    private static final int TABLE_CHARS = 128;
+    private static final Map<Long, int[]> GLYPHS = new ConcurrentHashMap<>();
+    private final int cellSize;
+    private final int[] pixels;
+    private final char[] chars;
+    private final int[] tableOffsets = new int[TABLE_CHARS];
+
+    /**
+     * Renders the glyphs of the chars of some ASCII art.
+     * @param art The ASCII art.
+     * @param cellSize The side of a cell of the image, in pixels, from 1 to GLYPH_SIZE.
+     */
+    GlyphAtlas(char[][] art, int cellSize) {
+        this.cellSize = cellSize;
+        chars = distinctChars(art);
+        int glyphPixels = cellSize * cellSize;
+        pixels = new int[chars.length * glyphPixels];
+        Arrays.fill(tableOffsets, -1);
+        for (int i = 0; i < chars.length; i++) {
+            System.arraycopy(glyph(chars[i], cellSize), 0, pixels, i * glyphPixels, glyphPixels);
+            if (chars[i] < TABLE_CHARS)
+                tableOffsets[chars[i]] = i * glyphPixels;
+        }
+    }
+
+    /**
+     * Gets the pixels of the atlas.
+     * @return The pixels, packed RGB; they must only be read.
+     */
+    int[] getPixels() {
+        return pixels;
+    }
+
+    /**
+     * Finds the glyph of a char in the atlas.
+     * @param c The char, one of the chars of the ASCII art.
+     * @return The index of the first pixel of its glyph in getPixels.
+     */
+    int offsetOf(char c) {
+        if (c < TABLE_CHARS)
+            return tableOffsets[c];
+        return Arrays.binarySearch(chars, c) * cellSize * cellSize;
+    }
+
+    /**
+     * Finds the distinct chars of some ASCII art.
+     * @param art The ASCII art.
+     * @return The chars, in ascending order.
+     */
+    private static char[] distinctChars(char[][] art) {
+        boolean[] table = new boolean[TABLE_CHARS];
+        StringBuilder others = new StringBuilder();
+        for (char[] row : art) {
+            for (char c : row) {
+                if (c < TABLE_CHARS)
+                    table[c] = true;
+                else if (others.indexOf(String.valueOf(c)) < 0)
+                    others.append(c);
+            }
+        }
+        StringBuilder distinct = new StringBuilder();
+        for (char c = 0; c < TABLE_CHARS; c++) {
+            if (table[c])
+                distinct.append(c);
+        }
+        char[] chars = distinct.append(others).toString().toCharArray();
+        Arrays.sort(chars);
+        return chars;
+    }
+
+    /**
+     * Gets the glyph of a char at a cell size, rendering it on first use.
+     * @param c The char.
+     * @param cellSize The side of the cell, in pixels.
+     * @return The pixels of the glyph, row by row; they must only be read.
+     */
+    private static int[] glyph(char c, int cellSize) {
+        return GLYPHS.computeIfAbsent(((long) cellSize << Character.SIZE) | c, key -> render(c, cellSize));
+    }
+
+    /**
+     * Renders the glyph of a char into a cell, each pixel of the cell the mean of the
+     * glyph pixels it covers.
+     * @param c The char.
+     * @param cellSize The side of the cell, in pixels.
+     * @return The pixels of the glyph, row by row.
+     */
+    private static int[] render(char c, int cellSize) {
+        boolean[][] glyph = CharConverter.convertToBoolArray(c);
+        int[] cell = new int[cellSize * cellSize];
+        for (int y = 0; y < cellSize; y++) {
+            for (int x = 0; x < cellSize; x++) {
+                int white = 0;
+                int covered = 0;
+                for (int gy = y * GLYPH_SIZE / cellSize; gy < (y + 1) * GLYPH_SIZE / cellSize; gy++) {
+                    for (int gx = x * GLYPH_SIZE / cellSize; gx < (x + 1) * GLYPH_SIZE / cellSize; gx++) {
+                        // the glyph is true where the char leaves the background
+                        if (glyph[gy][gx])
+                            white++;
+                        covered++;
+                    }
+                }
+                int level = (white * WHITE + covered / 2) / covered;
+                cell[y * cellSize + x] = level << 16 | level << 8 | level;
+            }
+        }
+        return cell;
+    }
+}
@@ -1,17 +1,24 @@
 package ascii_output;
 
-// Import the AsciiOutput interface
-import ascii_output.AsciiOutput;
-import java.io.BufferedWriter;
-import java.io.FileWriter;
+import metrics.Metrics;
+import metrics.Stage;
+import metrics.StageTimer;
+
 import java.io.IOException;
+import java.io.Writer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.logging.Logger;
 
 /**
  * Output a 2D array of chars to an HTML file viewable in a web browser.
+ * The file is encoded in chunks of rows in parallel (see ChunkedEncoder), in the
+ * default charset, byte for byte as write would encode it.
  * @author Dan Nirel
  */
-public class HtmlAsciiOutput implements AsciiOutput {
+public class HtmlAsciiOutput implements TextAsciiOutput {
     private static final double BASE_LINE_SPACING = 0.8;
     private static final double BASE_FONT_SIZE = 150.0;
 
@@ -25,41 +32,83 @@ public class HtmlAsciiOutput implements AsciiOutput {
 
     @Override
     public void out(char[][] chars) {
-        try(BufferedWriter writer = new BufferedWriter(new FileWriter(filename))) {
-            writer.write(String.format(
-                "<!DOCTYPE html>\n"+
-                "<html>\n"+
-                "<body style=\""+
-                    "\tCOLOR:#000000;"+
-                    "\tTEXT-ALIGN:center;"+
-                    "\tFONT-SIZE:1px;\">\n"+
-                "<p style=\""+
-                    "\twhite-space:pre;"+
-                    "\tFONT-FAMILY:%s;"+
-                    "\tFONT-SIZE:%frem;"+
-                    "\tLETTER-SPACING:0.15em;"+
-                    "\tLINE-HEIGHT:%fem;\">\n",
-                    fontName, BASE_FONT_SIZE/chars[0].length, BASE_LINE_SPACING));
+        StageTimer timer = Metrics.start(Stage.OUTPUT);
+        long bytes = 0;
+        try(FileChannel channel = FileChannel.open(Path.of(filename), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            bytes = ChunkedEncoder.write(ChunkedEncoder.encode(chars, this::writeHeader, this::writeRows,
+                    this::writeFooter, Charset.defaultCharset()), channel);
+        } catch(IOException e) {
+            Logger.getGlobal().severe(String.format("Failed to write to \"%s\"", filename));
+        }
+        Metrics.stop(timer, bytes);
+    }
+
+    @Override
+    public void write(char[][] chars, Writer writer) throws IOException {
+        writeHeader(chars, writer);
+        writeRows(chars, 0, chars.length, writer);
+        writeFooter(chars, writer);
+    }
+
+    /**
+     * Writes the start of the page, up to the first row.
+     * @param chars The chars to write.
+     * @param out Where to write.
+     * @throws IOException If writing failed.
+     */
+    private void writeHeader(char[][] chars, Appendable out) throws IOException {
+        // empty art, e.g. a viewport past the art, is an empty page
+        int columns = chars.length == 0 ? 0 : chars[0].length;
+        out.append(String.format(
+            "<!DOCTYPE html>\n"+
+            "<html>\n"+
+            "<body style=\""+
+                "\tCOLOR:#000000;"+
+                "\tTEXT-ALIGN:center;"+
+                "\tFONT-SIZE:1px;\">\n"+
+            "<p style=\""+
+                "\twhite-space:pre;"+
+                "\tFONT-FAMILY:%s;"+
+                "\tFONT-SIZE:%frem;"+
+                "\tLETTER-SPACING:0.15em;"+
+                "\tLINE-HEIGHT:%fem;\">\n",
+                fontName, BASE_FONT_SIZE/Math.max(1, columns), BASE_LINE_SPACING));
+    }
 
-            for(int y = 0 ; y < chars.length ; y++) {
-                for (int x = 0; x < chars[y].length ; x++) {
-                    String htmlRep;
-                    switch(chars[y][x]) {
-                        case '<': htmlRep = "&lt;";  break;
-                        case '>': htmlRep = "&gt;";  break;
-                        case '&': htmlRep = "&amp;"; break;
-                        default:  htmlRep = String.valueOf(chars[y][x]);
-                    }
-                    writer.write(htmlRep);
+    /**
+     * Writes rows, escaping the chars that are markup.
+     * @param chars The chars to write.
+     * @param from The first row to write.
+     * @param to The row after the last row to write.
+     * @param out Where to write.
+     * @throws IOException If writing failed.
+     */
+    private void writeRows(char[][] chars, int from, int to, Appendable out) throws IOException {
+        String lineSeparator = System.lineSeparator();
+        for(int y = from ; y < to ; y++) {
+            for (int x = 0; x < chars[y].length ; x++) {
+                switch(chars[y][x]) {
+                    case '<': out.append("&lt;");  break;
+                    case '>': out.append("&gt;");  break;
+                    case '&': out.append("&amp;"); break;
+                    default:  out.append(chars[y][x]);
                 }
-                writer.newLine();
             }
-            writer.write(
-                "</p>\n"+
-                "</body>\n"+
-                "</html>\n");
-        } catch(IOException e) {
-            Logger.getGlobal().severe(String.format("Failed to write to \"%s\"", filename));
+            out.append(lineSeparator);
         }
     }
+
+    /**
+     * Writes the end of the page, after the last row.
+     * @param chars The chars to write.
+     * @param out Where to write.
+     * @throws IOException If writing failed.
+     */
+    private void writeFooter(char[][] chars, Appendable out) throws IOException {
+        out.append(
+            "</p>\n"+
+            "</body>\n"+
+            "</html>\n");
+    }
 }
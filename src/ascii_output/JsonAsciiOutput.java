@@ -0,0 +1,102 @@
+package ascii_output;
+
+import metrics.Metrics;
+import metrics.Stage;
+import metrics.StageTimer;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.logging.Logger;
+
+/**
+ * Output a 2D array of chars to a JSON file, as an object with the number of
+ * rows and columns and an array holding each row as a string.
+ * The file is encoded in chunks of rows in parallel (see ChunkedEncoder), in the
+ * default charset, byte for byte as write would encode it.
+ * @author Daniel, Inbar
+ */
+public class JsonAsciiOutput implements TextAsciiOutput {
+    private final String filename;
+
+    /**
+     * Constructs an output to a JSON file.
+     * @param filename The name of the file.
+     */
+    public JsonAsciiOutput(String filename) {
+        this.filename = filename;
+    }
+
+    @Override
+    public void out(char[][] chars) {
+        StageTimer timer = Metrics.start(Stage.OUTPUT);
+        long bytes = 0;
+        try(FileChannel channel = FileChannel.open(Path.of(filename), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            bytes = ChunkedEncoder.write(ChunkedEncoder.encode(chars, this::writeHeader, this::writeRows,
+                    this::writeFooter, Charset.defaultCharset()), channel);
+        } catch(IOException e) {
+            Logger.getGlobal().severe(String.format("Failed to write to \"%s\"", filename));
+        }
+        Metrics.stop(timer, bytes);
+    }
+
+    @Override
+    public void write(char[][] chars, Writer writer) throws IOException {
+        writeHeader(chars, writer);
+        writeRows(chars, 0, chars.length, writer);
+        writeFooter(chars, writer);
+    }
+
+    /**
+     * Writes the object up to the first row.
+     * @param chars The chars to write.
+     * @param out Where to write.
+     * @throws IOException If writing failed.
+     */
+    private void writeHeader(char[][] chars, Appendable out) throws IOException {
+        int columns = chars.length == 0 ? 0 : chars[0].length;
+        out.append("{\"rows\":" + chars.length + ",\"columns\":" + columns + ",\"art\":[");
+    }
+
+    /**
+     * Writes rows as strings of the array, each but the first after a comma.
+     * @param chars The chars to write.
+     * @param from The first row to write.
+     * @param to The row after the last row to write.
+     * @param out Where to write.
+     * @throws IOException If writing failed.
+     */
+    private void writeRows(char[][] chars, int from, int to, Appendable out) throws IOException {
+        for (int y = from; y < to; y++) {
+            if (y > 0)
+                out.append(',');
+            out.append('"');
+            for (int x = 0; x < chars[y].length; x++) {
+                char c = chars[y][x];
+                if (c == '"' || c == '\\') {
+                    out.append('\\');
+                    out.append(c);
+                } else if (c < ' ') {
+                    out.append(String.format("\\u%04x", (int) c));
+                } else {
+                    out.append(c);
+                }
+            }
+            out.append('"');
+        }
+    }
+
+    /**
+     * Writes the end of the object, after the last row.
+     * @param chars The chars to write.
+     * @param out Where to write.
+     * @throws IOException If writing failed.
+     */
+    private void writeFooter(char[][] chars, Appendable out) throws IOException {
+        out.append("]}\n");
+    }
+}
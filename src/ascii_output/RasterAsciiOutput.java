@@ -0,0 +1,129 @@
+package ascii_output;
+
+import metrics.Metrics;
+import metrics.Stage;
+import metrics.StageTimer;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.File;
+import java.io.IOException;
+import java.util.Locale;
+import java.util.logging.Logger;
+import java.util.stream.IntStream;
+
+/**
+ * Output a 2D array of chars to a PNG or JPEG image, e.g. a thumbnail, each char a
+ * square cell of pixels drawn black on white.
+ * The glyphs of the chars are rendered once into a GlyphAtlas, and the image is built by
+ * copying rows of glyphs from the atlas into the pixels of the image, in bands of rows
+ * in parallel; ImageIO then encodes it in the format of the extension of the file.
+ * @author Daniel, Inbar
+ */
+public class RasterAsciiOutput implements AsciiOutput {
+    /** the largest cell, one pixel of the image for each pixel of a glyph */
+    public static final int MAX_CELL_SIZE = GlyphAtlas.GLYPH_SIZE;
+    // about this many pixels of the image in a band
+    private static final int BAND_PIXELS = 1 << 18;
+
+    private final String filename;
+    private final String format;
+    private final int cellSize;
+
+    /**
+     * Constructs an output to an image file.
+     * @param filename The name of the file; its extension, ".png", ".jpg" or ".jpeg", chooses the format.
+     * @param cellSize The side of the cell of a char, in pixels, from 1 to MAX_CELL_SIZE; cells
+     *                 smaller than MAX_CELL_SIZE draw their glyphs in grey levels.
+     * @throws IllegalArgumentException If the extension or the cell size is not supported.
+     */
+    public RasterAsciiOutput(String filename, int cellSize) {
+        if (cellSize < 1 || cellSize > MAX_CELL_SIZE)
+            throw new IllegalArgumentException("Unsupported cell size: " + cellSize);
+        this.filename = filename;
+        this.format = formatOf(filename);
+        this.cellSize = cellSize;
+    }
+
+    /**
+     * Finds the largest cell size whose image of some ASCII art is at most a number of
+     * pixels wide, e.g. for a thumbnail.
+     * @param columns The number of chars in a row of the ASCII art.
+     * @param maxWidth The largest width of the image, in pixels.
+     * @return The cell size, from 1 to MAX_CELL_SIZE.
+     */
+    public static int cellSizeFor(int columns, int maxWidth) {
+        return Math.max(1, Math.min(MAX_CELL_SIZE, maxWidth / Math.max(1, columns)));
+    }
+
+    @Override
+    public void out(char[][] chars) {
+        StageTimer timer = Metrics.start(Stage.OUTPUT);
+        long bytes = 0;
+        try {
+            BufferedImage image = render(chars);
+            File file = new File(filename);
+            if (!ImageIO.write(image, format, file))
+                throw new IOException("No writer for " + format);
+            bytes = file.length();
+        } catch (IOException | IllegalArgumentException e) {
+            Logger.getGlobal().severe(String.format("Failed to write to \"%s\": %s", filename, e.getMessage()));
+        }
+        Metrics.stop(timer, bytes);
+    }
+
+    /**
+     * Draws ASCII art into an image.
+     * @param chars The ASCII art.
+     * @return The image, of cellSize pixels for each char on each side.
+     * @throws IllegalArgumentException If the image would have no pixels or too many for an array.
+     */
+    public BufferedImage render(char[][] chars) {
+        int rows = chars.length;
+        int columns = rows == 0 ? 0 : chars[0].length;
+        long pixelCount = (long) rows * columns * cellSize * cellSize;
+        if (pixelCount == 0 || pixelCount > Integer.MAX_VALUE - 8)
+            throw new IllegalArgumentException("Cannot draw " + rows + " x " + columns + " chars of " +
+                    cellSize + " pixels");
+        int width = columns * cellSize;
+        BufferedImage image = new BufferedImage(width, rows * cellSize, BufferedImage.TYPE_INT_RGB);
+        int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        GlyphAtlas atlas = new GlyphAtlas(chars, cellSize);
+        int[] glyphs = atlas.getPixels();
+        int rowsInBand = Math.max(1, BAND_PIXELS / (width * cellSize));
+        int bands = (rows + rowsInBand - 1) / rowsInBand;
+        IntStream range = IntStream.range(0, bands);
+        (bands > 1 ? range.parallel() : range).forEach(band -> {
+            int[] offsets = new int[columns];
+            for (int row = band * rowsInBand; row < Math.min(rows, (band + 1) * rowsInBand); row++) {
+                for (int col = 0; col < columns; col++) {
+                    offsets[col] = atlas.offsetOf(chars[row][col]);
+                }
+                for (int y = 0; y < cellSize; y++) {
+                    int target = (row * cellSize + y) * width;
+                    int glyphRow = y * cellSize;
+                    for (int col = 0; col < columns; col++) {
+                        System.arraycopy(glyphs, offsets[col] + glyphRow, pixels, target + col * cellSize, cellSize);
+                    }
+                }
+            }
+        });
+        return image;
+    }
+
+    /**
+     * Finds the ImageIO format of an image file by its extension.
+     * @param filename The name of the file.
+     * @return The format name.
+     * @throws IllegalArgumentException If the extension is not supported.
+     */
+    private static String formatOf(String filename) {
+        String name = filename.toLowerCase(Locale.ROOT);
+        if (name.endsWith(".png"))
+            return "png";
+        if (name.endsWith(".jpg") || name.endsWith(".jpeg"))
+            return "jpeg";
+        throw new IllegalArgumentException("Unsupported image file: " + filename);
+    }
+}
@@ -0,0 +1,19 @@
+package ascii_output;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * An AsciiOutput whose format is text that can also be written to any writer,
+ * e.g. to the body of an HTTP response.
+ * @author Daniel, Inbar
+ */
+public interface TextAsciiOutput extends AsciiOutput {
+    /**
+     * Writes the specified 2D array of chars in the format of this output.
+     * @param chars The chars to write.
+     * @param writer The writer to write to. It is not closed.
+     * @throws IOException If writing failed.
+     */
+    void write(char[][] chars, Writer writer) throws IOException;
+}
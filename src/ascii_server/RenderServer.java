@@ -0,0 +1,608 @@
+package ascii_server;
+
+import ascii_art.AsciiArtEngine;
+import ascii_art.ConversionSpec;
+import ascii_art.RenderMode;
+import ascii_output.ConsoleAsciiOutput;
+import ascii_output.HtmlAsciiOutput;
+import ascii_output.JsonAsciiOutput;
+import ascii_output.TextAsciiOutput;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import image.Image;
+import image.Luminance;
+import image.PixelCache;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * An HTTP server that renders ASCII art, so a service does not have to start a
+ * new JVM and drive the Shell for every request.
+ * Each request is handled on its own virtual thread.
+ * <p>
+ * GET /render?path=cat.jpeg renders an image under the image root directory, and
+ * POST /render renders the image uploaded as the request body. Both accept the
+ * parameters res (default 128), chars (default 0-9, in the syntax of the shell's
+ * add command: a single char, a range such as a-z, "all", "space", or a list of
+ * chars), mode (brightness, edge or dither, default brightness), luminance (gamma or linear,
+ * default gamma) and format (text, html or json, default text).
+ * <p>
+ * Images are decoded with only as many pixels as the resolution of the request needs
+ * (see Image(filename, columns)), uploads as well. Decoded images, with their greyness
+ * values, and char matchers are shared between requests through a single AsciiArtEngine.
+ * The images are kept up to an estimate of the bytes they retain (a quarter of the heap,
+ * or -Dascii.imageCacheBytes=N bytes), dropping the least recently used first, and the
+ * number of images decoded at the same time is bounded; a request that waits too long
+ * for a decode is answered with 503. Images that would decode to more than 4096 x 4096
+ * pixels, as read from their header before decoding, are answered with 413. Charsets are limited to the
+ * printable ASCII chars.
+ * @author Daniel, Inbar
+ */
+public class RenderServer {
+    private static final int DEFAULT_PORT = 8080;
+    private static final int DEFAULT_RESOLUTION = 128;
+    private static final String DEFAULT_CHARS = "0-9";
+    private static final String DEFAULT_FORMAT = "text";
+    private static final String FONT_NAME = "Courier New";
+    private static final int MAX_UPLOAD_BYTES = 64 * 1024 * 1024;
+    // the bytes the decoded images kept between requests may retain, a quarter of the heap by default
+    private static final long IMAGE_CACHE_BYTES =
+            Long.getLong("ascii.imageCacheBytes", Runtime.getRuntime().maxMemory() / 4);
+    // a pixel retains about 36 bytes once decoded, so about 600 MB
+    private static final long MAX_DECODED_PIXELS = 1L << 24;
+    private static final long DECODE_WAIT_SECONDS = 10;
+    // the wait for a permit and the decode itself
+    private static final long IMAGE_WAIT_SECONDS = 60;
+    private static final int MIN_CHAR = 32;
+    private static final int MAX_CHAR = 126;
+
+    private final HttpServer server;
+    private final Path imageRoot;
+    private final Semaphore decodePermits;
+    private final AsciiArtEngine engine = new AsciiArtEngine();
+    private final PixelCache pixelCache = PixelCache.fromSystemProperties();
+    // least recently used first, bounded like an ImageCache by the bytes the decoded images retain
+    private final LinkedHashMap<String, CompletableFuture<Image>> images = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * Constructs a server, without starting it.
+     * @param port The port to listen on, 0 for any free port.
+     * @param imageRoot The directory that the path parameter is resolved against.
+     * @param maxDecodes The maximal number of images decoded at the same time.
+     * @throws IOException If the server could not bind to the port.
+     */
+    public RenderServer(int port, Path imageRoot, int maxDecodes) throws IOException {
+        this.imageRoot = imageRoot.toRealPath();
+        this.decodePermits = new Semaphore(maxDecodes);
+        this.server = HttpServer.create(new InetSocketAddress(port), 0);
+        server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        server.createContext("/render", this::handle);
+    }
+
+    /**
+     * Starts accepting requests.
+     */
+    public void start() {
+        server.start();
+    }
+
+    /**
+     * Stops accepting requests, waiting up to the given delay for running ones.
+     * @param delaySeconds The maximal time to wait, in seconds.
+     */
+    public void stop(int delaySeconds) {
+        server.stop(delaySeconds);
+    }
+
+    /**
+     * Gets the port the server listens on.
+     * @return The port.
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Handles a single render request.
+     * @param exchange The request and its response.
+     * @throws IOException If the response could not be sent.
+     */
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            try {
+                Map<String, String> params = parseQuery(exchange.getRequestURI().getRawQuery());
+                Image image = loadImage(exchange, params);
+                int resolution = parseResolution(params.getOrDefault("res",
+                        String.valueOf(DEFAULT_RESOLUTION)), image);
+                char[] charset = parseCharset(params.getOrDefault("chars", DEFAULT_CHARS));
+                RenderMode mode = parseMode(params.getOrDefault("mode", RenderMode.BRIGHTNESS.getLabel()));
+                Luminance luminance = parseLuminance(params.getOrDefault("luminance",
+                        Luminance.GAMMA.getLabel()));
+                String format = params.getOrDefault("format", DEFAULT_FORMAT);
+                TextAsciiOutput output = outputOf(format);
+
+                char[][] art = engine.convert(image, new ConversionSpec(resolution, charset, mode, luminance))
+                        .toCharArray();
+                StringWriter body = new StringWriter();
+                output.write(art, body);
+                send(exchange, 200, contentTypeOf(format), body.toString());
+            } catch (RequestException e) {
+                send(exchange, e.getStatus(), "text/plain", e.getMessage() + "\n");
+            } catch (RuntimeException e) {
+                send(exchange, 500, "text/plain", "Failed to render the image.\n");
+            }
+        }
+    }
+
+    /**
+     * Gets the image of a request, from the cache or by decoding it.
+     * @param exchange The request.
+     * @param params The query parameters of the request.
+     * @return The image.
+     * @throws RequestException If the image could not be loaded.
+     * @throws IOException If the request body could not be read.
+     */
+    private Image loadImage(HttpExchange exchange, Map<String, String> params)
+            throws RequestException, IOException {
+        switch (exchange.getRequestMethod()) {
+            case "GET":
+                String path = params.get("path");
+                if (path == null)
+                    throw new RequestException(400, "Missing the path parameter.");
+                Path file = resolveImagePath(path);
+                int columns = columnsOf(params);
+                int step;
+                try {
+                    step = Image.getSubsampling(file.toString(), columns);
+                } catch (IOException e) {
+                    throw new RequestException(415, "Could not decode the image.");
+                }
+                String key = file + "|" + Files.size(file) + "|" + Files.getLastModifiedTime(file) + "|" + step;
+                return getImage(key, () -> {
+                    checkDecodedPixels(Image.getDecodedPixels(file.toString(), columns));
+                    return pixelCache != null ? pixelCache.get(file.toString(), columns) :
+                            new Image(file.toString(), columns);
+                });
+            case "POST":
+                byte[] upload = readUpload(exchange.getRequestBody());
+                int uploadColumns = columnsOf(params);
+                int uploadStep;
+                try {
+                    uploadStep = Image.getSubsampling(upload, uploadColumns);
+                } catch (IOException e) {
+                    throw new RequestException(415, "Could not decode the image.");
+                }
+                return getImage("upload|" + sha256(upload) + "|" + uploadStep, () -> {
+                    checkDecodedPixels(Image.getDecodedPixels(upload, uploadColumns));
+                    return new Image(upload, uploadColumns);
+                });
+            default:
+                throw new RequestException(405, "Only GET and POST are supported.");
+        }
+    }
+
+    /**
+     * Finds the number of columns a request renders at, so only the pixels it needs are decoded.
+     * @param params The query parameters of the request.
+     * @return The resolution parameter, or Integer.MAX_VALUE to decode every pixel if it
+     *         is not a positive number, which parseResolution reports.
+     */
+    private static int columnsOf(Map<String, String> params) {
+        try {
+            int columns = Integer.parseInt(params.getOrDefault("res", String.valueOf(DEFAULT_RESOLUTION)));
+            return columns > 0 ? columns : Integer.MAX_VALUE;
+        } catch (NumberFormatException e) {
+            return Integer.MAX_VALUE;
+        }
+    }
+
+    /**
+     * Checks that an image is small enough to decode, before decoding it.
+     * @param pixels The number of pixels the image decodes to.
+     * @throws RequestException If it is more than MAX_DECODED_PIXELS.
+     */
+    private static void checkDecodedPixels(long pixels) throws RequestException {
+        if (pixels > MAX_DECODED_PIXELS)
+            throw new RequestException(413, "The image is too large to decode at this res, at most "
+                    + MAX_DECODED_PIXELS + " pixels are decoded.");
+    }
+
+    /**
+     * Resolves the path parameter against the image root, not letting it escape the root.
+     * @param path The path parameter.
+     * @return The real path of the image file.
+     * @throws RequestException If there is no such image under the image root.
+     */
+    private Path resolveImagePath(String path) throws RequestException {
+        try {
+            Path file = imageRoot.resolve(path).toRealPath();
+            if (file.startsWith(imageRoot) && Files.isRegularFile(file))
+                return file;
+        } catch (IOException | RuntimeException e) {
+            // reported below as a missing image
+        }
+        throw new RequestException(404, "No such image: " + path);
+    }
+
+    /**
+     * Gets a decoded image from the cache, decoding it if no request did so yet.
+     * Requests for an image that is being decoded wait for that decode, up to IMAGE_WAIT_SECONDS.
+     * @param key The key of the image in the cache.
+     * @param decoder Decodes the image.
+     * @return The image.
+     * @throws RequestException If the image could not be decoded, or the server is busy.
+     */
+    private Image getImage(String key, ImageDecoder decoder) throws RequestException {
+        CompletableFuture<Image> future;
+        boolean decodeHere = false;
+        synchronized (images) {
+            future = images.get(key);
+            if (future == null) {
+                future = new CompletableFuture<>();
+                images.put(key, future);
+                decodeHere = true;
+            }
+        }
+        if (decodeHere)
+            decode(key, future, decoder);
+        try {
+            Image image = future.get(IMAGE_WAIT_SECONDS, TimeUnit.SECONDS);
+            evict(key);
+            return image;
+        } catch (TimeoutException e) {
+            throw new RequestException(503, "The image is still being decoded, try again later.");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RequestException)
+                throw (RequestException) e.getCause();
+            throw new RequestException(500, "Failed to decode the image.");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RequestException(503, "Interrupted while waiting for the image.");
+        }
+    }
+
+    /**
+     * Decodes an image once a decode permit is available, completing its future.
+     * Failed decodes are removed from the cache, so they can be retried; that includes an
+     * Error, e.g. running out of memory, so the requests waiting for the image never block.
+     * @param key The key of the image in the cache.
+     * @param future The future of the image.
+     * @param decoder Decodes the image.
+     */
+    private void decode(String key, CompletableFuture<Image> future, ImageDecoder decoder) {
+        try {
+            if (!decodePermits.tryAcquire(DECODE_WAIT_SECONDS, TimeUnit.SECONDS))
+                throw new RequestException(503, "Too many images are being decoded, try again later.");
+            try {
+                future.complete(decoder.decode());
+            } finally {
+                decodePermits.release();
+            }
+        } catch (IOException e) {
+            fail(key, future, new RequestException(415, "Could not decode the image."));
+        } catch (RequestException e) {
+            fail(key, future, e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            fail(key, future, new RequestException(503, "Interrupted while decoding the image."));
+        } catch (OutOfMemoryError e) {
+            fail(key, future, new RequestException(503, "Not enough memory to decode the image, try again later."));
+        } catch (RuntimeException | Error e) {
+            fail(key, future, e);
+        }
+    }
+
+    /**
+     * Drops the least recently used decoded images until the rest fit in the budget,
+     * never the image of the current request. Images still being decoded are kept.
+     * @param current The key of the image of the current request.
+     */
+    private void evict(String current) {
+        synchronized (images) {
+            long bytes = 0;
+            for (CompletableFuture<Image> future : images.values()) {
+                if (isDecoded(future))
+                    bytes += future.join().getRetainedBytes();
+            }
+            Iterator<Map.Entry<String, CompletableFuture<Image>>> eldest = images.entrySet().iterator();
+            while (bytes > IMAGE_CACHE_BYTES && eldest.hasNext()) {
+                Map.Entry<String, CompletableFuture<Image>> entry = eldest.next();
+                if (entry.getKey().equals(current) || !isDecoded(entry.getValue()))
+                    continue;
+                bytes -= entry.getValue().join().getRetainedBytes();
+                eldest.remove();
+            }
+        }
+    }
+
+    /**
+     * Checks whether an image was decoded.
+     * @param future The future of the image.
+     * @return True if the image is ready.
+     */
+    private static boolean isDecoded(CompletableFuture<Image> future) {
+        return future.isDone() && !future.isCompletedExceptionally();
+    }
+
+    /**
+     * Fails the future of an image and removes it from the cache.
+     * @param key The key of the image in the cache.
+     * @param future The future of the image.
+     * @param cause The failure.
+     */
+    private void fail(String key, CompletableFuture<Image> future, Throwable cause) {
+        synchronized (images) {
+            images.remove(key, future);
+        }
+        future.completeExceptionally(cause);
+    }
+
+    /**
+     * Parses a charset parameter, in the syntax of the shell's add command.
+     * @param spec The charset parameter.
+     * @return The chars of the charset.
+     * @throws RequestException If the charset is invalid.
+     */
+    private static char[] parseCharset(String spec) throws RequestException {
+        TreeSet<Character> charset = new TreeSet<>();
+        if (spec.equals("all")) {
+            for (int i = MIN_CHAR; i <= MAX_CHAR; i++) {
+                charset.add((char) i);
+            }
+        } else if (spec.equals("space")) {
+            charset.add(' ');
+        } else if (spec.length() == 3 && spec.charAt(1) == '-') {
+            char start = (char) Math.min(spec.charAt(0), spec.charAt(2));
+            char end = (char) Math.max(spec.charAt(0), spec.charAt(2));
+            for (char c = start; c <= end; c++) {
+                charset.add(c);
+            }
+        } else {
+            for (char c : spec.toCharArray()) {
+                charset.add(c);
+            }
+        }
+        // brightness is normalized between the darkest and brightest chars, so two are needed
+        if (charset.size() < 2)
+            throw new RequestException(400, "The charset needs at least two chars.");
+        // only the printable ASCII chars, so a client cannot make the engine build a matcher for any set of chars
+        if (charset.first() < MIN_CHAR || charset.last() > MAX_CHAR)
+            throw new RequestException(400, "The charset may only have the chars ' ' to '~'.");
+        char[] chars = new char[charset.size()];
+        int i = 0;
+        for (char c : charset) {
+            chars[i++] = c;
+        }
+        return chars;
+    }
+
+    /**
+     * Parses the resolution parameter.
+     * @param value The resolution parameter.
+     * @param image The image to render.
+     * @return The resolution.
+     * @throws RequestException If the resolution is invalid for the image.
+     */
+    private static int parseResolution(String value, Image image) throws RequestException {
+        int resolution;
+        try {
+            resolution = Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new RequestException(400, "Invalid resolution: " + value);
+        }
+        int minCharsInRow = Math.max(1, image.getWidth() / image.getHeight());
+        // the width of the image in its file, up to a step
+        int maxResolution = image.getWidth() * image.getSubsampling();
+        if (resolution < minCharsInRow || resolution > maxResolution)
+            throw new RequestException(400, "The resolution must be between " + minCharsInRow +
+                    " and " + maxResolution + ".");
+        return resolution;
+    }
+
+    /**
+     * Parses the mode parameter.
+     * @param value The mode parameter.
+     * @return The render mode.
+     * @throws RequestException If the mode is unknown.
+     */
+    private static RenderMode parseMode(String value) throws RequestException {
+        RenderMode mode = RenderMode.fromLabel(value);
+        if (mode == null)
+            throw new RequestException(400, "Unknown mode: " + value);
+        return mode;
+    }
+
+    /**
+     * Parses the luminance parameter.
+     * @param value The luminance parameter.
+     * @return The luminance.
+     * @throws RequestException If the luminance is unknown.
+     */
+    private static Luminance parseLuminance(String value) throws RequestException {
+        Luminance luminance = Luminance.fromLabel(value);
+        if (luminance == null)
+            throw new RequestException(400, "Unknown luminance: " + value);
+        return luminance;
+    }
+
+    /**
+     * Gets the output of a format.
+     * @param format The format parameter.
+     * @return The output.
+     * @throws RequestException If the format is unknown.
+     */
+    private static TextAsciiOutput outputOf(String format) throws RequestException {
+        switch (format) {
+            case "text":
+                return new ConsoleAsciiOutput();
+            case "html":
+                // never written to a file, only to responses
+                return new HtmlAsciiOutput(null, FONT_NAME);
+            case "json":
+                return new JsonAsciiOutput(null);
+            default:
+                throw new RequestException(400, "Unknown format: " + format);
+        }
+    }
+
+    /**
+     * Gets the content type of a format.
+     * @param format The format parameter.
+     * @return The content type.
+     */
+    private static String contentTypeOf(String format) {
+        switch (format) {
+            case "html":
+                return "text/html";
+            case "json":
+                return "application/json";
+            default:
+                return "text/plain";
+        }
+    }
+
+    /**
+     * Reads an uploaded image, up to the maximal upload size.
+     * @param body The request body.
+     * @return The bytes of the image.
+     * @throws IOException If the body could not be read.
+     * @throws RequestException If the body is empty or too large.
+     */
+    private static byte[] readUpload(InputStream body) throws IOException, RequestException {
+        byte[] upload = body.readNBytes(MAX_UPLOAD_BYTES + 1);
+        if (upload.length > MAX_UPLOAD_BYTES)
+            throw new RequestException(413, "The image is too large.");
+        if (upload.length == 0)
+            throw new RequestException(400, "Missing the image in the request body.");
+        return upload;
+    }
+
+    /**
+     * Hashes an uploaded image, to share the decode of identical uploads.
+     * @param bytes The bytes of the image.
+     * @return The hash, in hex.
+     */
+    private static String sha256(byte[] bytes) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(bytes));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Parses a raw query string.
+     * @param query The raw query string, may be null.
+     * @return The parameters.
+     */
+    private static Map<String, String> parseQuery(String query) {
+        Map<String, String> params = new HashMap<>();
+        if (query == null)
+            return params;
+        for (String pair : query.split("&")) {
+            int separator = pair.indexOf('=');
+            if (separator < 0)
+                continue;
+            params.put(URLDecoder.decode(pair.substring(0, separator), StandardCharsets.UTF_8),
+                    URLDecoder.decode(pair.substring(separator + 1), StandardCharsets.UTF_8));
+        }
+        return params;
+    }
+
+    /**
+     * Sends a response.
+     * @param exchange The request.
+     * @param status The HTTP status.
+     * @param contentType The content type of the body.
+     * @param body The body.
+     * @throws IOException If the response could not be sent.
+     */
+    private static void send(HttpExchange exchange, int status, String contentType, String body)
+            throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", contentType + "; charset=utf-8");
+        if (status == 503)
+            exchange.getResponseHeaders().set("Retry-After", "1");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    /**
+     * Decodes an image.
+     */
+    private interface ImageDecoder {
+        /**
+         * Decodes the image.
+         * @return The image.
+         * @throws IOException If the image could not be decoded.
+         * @throws RequestException If the image is too large to decode.
+         */
+        Image decode() throws IOException, RequestException;
+    }
+
+    /**
+     * A request that cannot be answered with ASCII art, and the HTTP status to answer it with.
+     */
+    private static class RequestException extends Exception {
+        private final int status;
+
+        /**
+         * constructor
+         * @param status The HTTP status.
+         * @param message The message of the response.
+         */
+        RequestException(int status, String message) {
+            super(message);
+            this.status = status;
+        }
+
+        /**
+         * Gets the HTTP status.
+         * @return The status.
+         */
+        int getStatus() {
+            return status;
+        }
+    }
+
+    /**
+     * Starts the server.
+     * @param args Optional: the port (default 8080), the image root directory (default
+     *             the working directory) and the maximal number of concurrent decodes
+     *             (default the number of processors).
+     * @throws IOException If the server could not start.
+     */
+    public static void main(String[] args) throws IOException {
+        System.setProperty("java.awt.headless", "true");
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        Path root = Path.of(args.length > 1 ? args[1] : ".");
+        int maxDecodes = args.length > 2 ? Integer.parseInt(args[2]) :
+                Runtime.getRuntime().availableProcessors();
+        RenderServer renderServer = new RenderServer(port, root, maxDecodes);
+        renderServer.start();
+        System.out.println("Rendering on http://localhost:" + renderServer.getPort() + "/render");
+    }
+}
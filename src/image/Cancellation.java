@@ -0,0 +1,42 @@
+package image;
+
+import java.util.concurrent.CancellationException;
+
+/**
+ * Tells a long computation, e.g. of the greyness of a resolution, that its result is no
+ * longer needed. The computation checks it between rows of sub-images and stops with a
+ * CancellationException, leaving nothing half computed in the caches of the image.
+ * Safe to use from any thread.
+ * @author Daniel, Inbar
+ */
+public final class Cancellation {
+    /** never cancelled, for computations that always run to the end */
+    public static final Cancellation NONE = new Cancellation();
+    private volatile boolean cancelled;
+
+    /**
+     * Cancels the computations that check this cancellation.
+     */
+    public void cancel() {
+        if (this == NONE)
+            throw new IllegalStateException("Cancellation.NONE cannot be cancelled.");
+        cancelled = true;
+    }
+
+    /**
+     * Checks whether the computations were cancelled.
+     * @return True if they were cancelled.
+     */
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Stops the computation that calls it if it was cancelled.
+     * @throws CancellationException If it was cancelled.
+     */
+    public void check() {
+        if (cancelled)
+            throw new CancellationException("The computation was cancelled.");
+    }
+}
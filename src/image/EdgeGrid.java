@@ -0,0 +1,154 @@
+package image;
+
+/**
+ * The edges in each sub-image of an image at one resolution, in rows of
+ * sub-images, summarized from the Sobel gradients of its pixels, with the greyness
+ * of the sub-images as computed in the same pass.
+ * Instances are immutable, so they can be shared between threads.
+ * @author Daniel, Inbar
+ */
+public final class EdgeGrid {
+    private final double[] strengths;
+    private final double[] alignmentsX;
+    private final double[] alignmentsY;
+    private final double[] positions;
+    private final double[] greyness;
+    private final int rows;
+    private final int columns;
+
+    /**
+     * Constructs a grid that takes ownership of its values, each given row after row.
+     * @param strengths The root mean square gradient magnitudes.
+     * @param alignmentsX The horizontal components of the alignments of the gradients.
+     * @param alignmentsY The vertical components of the alignments of the gradients.
+     * @param positions The vertical positions of the edges.
+     * @param greyness The greyness values.
+     * @param rows The number of rows of sub-images.
+     * @param columns The number of sub-images in a row.
+     */
+    EdgeGrid(double[] strengths, double[] alignmentsX, double[] alignmentsY, double[] positions,
+             double[] greyness, int rows, int columns) {
+        this.strengths = strengths;
+        this.alignmentsX = alignmentsX;
+        this.alignmentsY = alignmentsY;
+        this.positions = positions;
+        this.greyness = greyness;
+        this.rows = rows;
+        this.columns = columns;
+    }
+
+    /**
+     * Gets the number of rows of sub-images.
+     * @return The number of rows.
+     */
+    public int getRows() {
+        return rows;
+    }
+
+    /**
+     * Gets the number of sub-images in a row.
+     * @return The number of columns.
+     */
+    public int getColumns() {
+        return columns;
+    }
+
+    /**
+     * Gets the strength of the edges in a sub-image: the root mean square magnitude
+     * of its gradients, relative to the largest possible one.
+     * @param row The row of the sub-image.
+     * @param column The column of the sub-image.
+     * @return The strength, between 0 and 1.
+     */
+    public double getStrength(int row, int column) {
+        return strengths[row * columns + column];
+    }
+
+    /**
+     * Gets how much the gradients of a sub-image share one orientation: 1 for a
+     * single straight edge, 0 for texture or noise with no dominant direction.
+     * @param row The row of the sub-image.
+     * @param column The column of the sub-image.
+     * @return The coherence, between 0 and 1.
+     */
+    public double getCoherence(int row, int column) {
+        return Math.hypot(getAlignmentX(row, column), getAlignmentY(row, column));
+    }
+
+    /**
+     * Gets the dominant orientation of the gradients of a sub-image, perpendicular to
+     * its edge. 0 is a horizontal gradient (a vertical edge), positive angles turn
+     * towards the bottom of the image, so pi/4 is the gradient of a '/' edge.
+     * @param row The row of the sub-image.
+     * @param column The column of the sub-image.
+     * @return The orientation in radians, between -pi/2 and pi/2.
+     */
+    public double getOrientation(int row, int column) {
+        return 0.5 * Math.atan2(getAlignmentY(row, column), getAlignmentX(row, column));
+    }
+
+    /**
+     * Gets the horizontal component of the alignment of the gradients of a sub-image:
+     * the vector at twice their orientation, whose length is their coherence. Doubling
+     * the angle makes opposite gradients, the two sides of a line, add up instead of
+     * cancelling out, and lets edges be classified without trigonometry.
+     * @param row The row of the sub-image.
+     * @param column The column of the sub-image.
+     * @return The coherence times the cosine of twice the orientation.
+     */
+    public double getAlignmentX(int row, int column) {
+        return alignmentsX[row * columns + column];
+    }
+
+    /**
+     * Gets the vertical component of the alignment of the gradients of a sub-image,
+     * see getAlignmentX.
+     * @param row The row of the sub-image.
+     * @param column The column of the sub-image.
+     * @return The coherence times the sine of twice the orientation.
+     */
+    public double getAlignmentY(int row, int column) {
+        return alignmentsY[row * columns + column];
+    }
+
+    /**
+     * Gets where the horizontal edges of a sub-image lie, as the centroid of the
+     * squares of its vertical gradients.
+     * @param row The row of the sub-image.
+     * @param column The column of the sub-image.
+     * @return The position, 0 at the top of the sub-image and 1 at its bottom.
+     */
+    public double getPosition(int row, int column) {
+        return positions[row * columns + column];
+    }
+
+    /**
+     * Gets the greyness of a sub-image, from the integer luminance the gradients
+     * were computed from; it may differ from GreynessGrid by a fraction of 1/255.
+     * @param row The row of the sub-image.
+     * @param column The column of the sub-image.
+     * @return The greyness, between 0 and 1.
+     */
+    public double getGreyness(int row, int column) {
+        return greyness[row * columns + column];
+    }
+
+    /**
+     * Copies the values, e.g. to update some of them into a new grid.
+     * @return New arrays of the strengths, alignmentsX, alignmentsY, positions and
+     *         greyness, in the order of the constructor.
+     */
+    double[][] copyValues() {
+        return new double[][]{strengths.clone(), alignmentsX.clone(), alignmentsY.clone(), positions.clone(),
+                greyness.clone()};
+    }
+
+    /**
+     * Gets the number of bytes of the values.
+     * @return The number of bytes.
+     */
+    long getBytes() {
+        return ((long) strengths.length + alignmentsX.length + alignmentsY.length + positions.length +
+                greyness.length) * Double.BYTES;
+    }
+}
@@ -0,0 +1,165 @@
+package image;
+
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * The greyness of each sub-image of an image at one resolution, in rows of
+ * sub-images. Instances are immutable once shared, so they can be shared between threads.
+ * <p>
+ * With -Dascii.offHeapGrids=true, the grids the renderer allocates keep their values off
+ * the heap, in direct buffers from a pool (see GridPool), so the grids of large resolutions
+ * are not huge arrays for the garbage collector. A grid of a single conversion, e.g. of a
+ * viewport, returns its buffer with release, once the conversion no longer reads it; a
+ * cached grid returns it once the grid is collected, and past the limit of the direct
+ * memory of cached grids, they are kept on the heap.
+ * @author Daniel, Inbar
+ */
+public final class GreynessGrid {
+    private static final boolean OFF_HEAP = Boolean.getBoolean("ascii.offHeapGrids");
+    // on the heap, or null
+    private final double[] values;
+    // off the heap, or null
+    private final DoubleBuffer offHeapValues;
+    // the buffer of offHeapValues if it came from the pool, or null
+    private final ByteBuffer pooled;
+    private final AtomicBoolean released = new AtomicBoolean();
+    private final int rows;
+    private final int columns;
+
+    /**
+     * Constructs a grid that takes ownership of its values.
+     * @param values The greyness values, row after row.
+     * @param rows The number of rows of sub-images.
+     * @param columns The number of sub-images in a row.
+     */
+    GreynessGrid(double[] values, int rows, int columns) {
+        this.values = values;
+        this.offHeapValues = null;
+        this.pooled = null;
+        this.rows = rows;
+        this.columns = columns;
+    }
+
+    /**
+     * Constructs a grid that keeps its values in a direct buffer.
+     * @param offHeapValues The values, at least one for each sub-image.
+     * @param pooled The buffer of the values if release returns it to GridPool, or null.
+     * @param rows The number of rows of sub-images.
+     * @param columns The number of sub-images in a row.
+     */
+    private GreynessGrid(DoubleBuffer offHeapValues, ByteBuffer pooled, int rows, int columns) {
+        this.values = null;
+        this.offHeapValues = offHeapValues;
+        this.pooled = pooled;
+        this.rows = rows;
+        this.columns = columns;
+    }
+
+    /**
+     * Allocates a grid to be filled with set before it is shared: on the heap, or off the
+     * heap with -Dascii.offHeapGrids=true.
+     * @param rows The number of rows of sub-images.
+     * @param columns The number of sub-images in a row.
+     * @param pooled Whether the grid is of a single conversion, which its user releases,
+     *               instead of a cached grid.
+     * @return The grid, its values undefined.
+     */
+    static GreynessGrid allocate(int rows, int columns, boolean pooled) {
+        long bytes = (long) rows * columns * Double.BYTES;
+        // a direct buffer holds at most Integer.MAX_VALUE bytes
+        if (OFF_HEAP && bytes <= Integer.MAX_VALUE) {
+            if (pooled) {
+                ByteBuffer buffer = GridPool.acquire((int) bytes);
+                return new GreynessGrid(buffer.asDoubleBuffer(), buffer, rows, columns);
+            }
+            DoubleBuffer cached = GridPool.acquireCached((int) bytes);
+            if (cached != null)
+                return new GreynessGrid(cached, null, rows, columns);
+        }
+        return new GreynessGrid(new double[rows * columns], rows, columns);
+    }
+
+    /**
+     * Gets the number of rows of sub-images.
+     * @return The number of rows.
+     */
+    public int getRows() {
+        return rows;
+    }
+
+    /**
+     * Gets the number of sub-images in a row.
+     * @return The number of columns.
+     */
+    public int getColumns() {
+        return columns;
+    }
+
+    /**
+     * Gets the greyness of a sub-image.
+     * @param row The row of the sub-image.
+     * @param column The column of the sub-image.
+     * @return The greyness, between 0 and 1.
+     */
+    public double get(int row, int column) {
+        int index = row * columns + column;
+        return values != null ? values[index] : offHeapValues.get(index);
+    }
+
+    /**
+     * Checks whether the values are kept off the heap.
+     * @return True if they are in a direct buffer.
+     */
+    public boolean isOffHeap() {
+        return values == null;
+    }
+
+    /**
+     * Returns the buffer of a grid of a single conversion to the pool, so the next one
+     * reuses it. The grid must not be read after this call. Does nothing for a grid that
+     * does not come from the pool, or that was already released.
+     */
+    public void release() {
+        if (pooled != null && released.compareAndSet(false, true))
+            GridPool.release(pooled);
+    }
+
+    /**
+     * Sets the greyness of a sub-image, before the grid is shared.
+     * @param row The row of the sub-image.
+     * @param column The column of the sub-image.
+     * @param greyness The greyness, between 0 and 1.
+     */
+    void set(int row, int column, double greyness) {
+        int index = row * columns + column;
+        if (values != null)
+            values[index] = greyness;
+        else
+            offHeapValues.put(index, greyness);
+    }
+
+    /**
+     * Copies the grid, e.g. to update some of its values in the copy.
+     * @return A new grid of the same values, which is not pooled.
+     */
+    GreynessGrid copy() {
+        if (values != null)
+            return new GreynessGrid(values.clone(), rows, columns);
+        GreynessGrid copy = allocate(rows, columns, false);
+        if (copy.values != null)
+            offHeapValues.get(0, copy.values);
+        else
+            copy.offHeapValues.put(0, offHeapValues, 0, rows * columns);
+        return copy;
+    }
+
+    /**
+     * Gets the number of bytes of the values.
+     * @return The number of bytes.
+     */
+    long getBytes() {
+        return (long) rows * columns * Double.BYTES;
+    }
+}
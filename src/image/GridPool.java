@@ -0,0 +1,112 @@
+package image;
+
+import java.lang.ref.Cleaner;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Direct buffers for the values of grids, kept once a grid no longer needs its buffer
+ * so the next grid reuses it instead of allocating again:
+ * <ul>
+ *     <li>a grid of a single conversion, e.g. the greyness of a viewport, returns its
+ *     buffer with release;</li>
+ *     <li>a cached grid, which any thread may read for as long as its image is kept, returns
+ *     its buffer once it is collected. Cached grids hold at most a quarter of the heap
+ *     (-Dascii.offHeapGridBytes=N bytes) off the heap together; beyond it, grids are kept on
+ *     the heap, so the direct memory never runs out and makes the JVM collect to free it.</li>
+ * </ul>
+ * Buffers are pooled in sizes of powers of two; idle buffers beyond the limit (256 MiB,
+ * or -Dascii.gridPoolBytes=N bytes) are dropped and freed with their last reference.
+ * Safe to use from any thread.
+ * @author Daniel, Inbar
+ */
+final class GridPool {
+    private static final long LIMIT_BYTES = Long.getLong("ascii.gridPoolBytes", 256L << 20);
+    private static final long CACHED_LIMIT_BYTES =
+            Long.getLong("ascii.offHeapGridBytes", Runtime.getRuntime().maxMemory() / 4);
+    // the smallest buffer, so small grids share a size
+    private static final int MIN_BYTES = 4096;
+    private static final Map<Integer, Queue<ByteBuffer>> IDLE = new ConcurrentHashMap<>();
+    private static final AtomicLong idleBytes = new AtomicLong();
+    // the bytes of the buffers of the cached grids that were not collected yet
+    private static final AtomicLong cachedBytes = new AtomicLong();
+    private static final Cleaner CLEANER = Cleaner.create();
+
+    /**
+     * No instances, the pool is shared by all images.
+     */
+    private GridPool() {
+    }
+
+    /**
+     * Takes a buffer from the pool, or allocates one if none of its size is idle.
+     * @param bytes The number of bytes needed.
+     * @return A direct buffer in the native byte order, of at least that many bytes; its
+     *         contents are undefined.
+     */
+    static ByteBuffer acquire(int bytes) {
+        int capacity = capacityOf(bytes);
+        Queue<ByteBuffer> idle = IDLE.get(capacity);
+        ByteBuffer buffer = idle == null ? null : idle.poll();
+        if (buffer == null)
+            return ByteBuffer.allocateDirect(capacity).order(ByteOrder.nativeOrder());
+        idleBytes.addAndGet(-capacity);
+        return buffer;
+    }
+
+    /**
+     * Takes a buffer from the pool for the values of a cached grid, which returns to the
+     * pool once the values are no longer reachable, unless the cached grids already hold
+     * the limit of their direct memory.
+     * @param bytes The number of bytes needed.
+     * @return The values, at least bytes / 8 of them, undefined; the grid must keep them
+     *         and never hand them out. Null if the limit would be exceeded.
+     */
+    static DoubleBuffer acquireCached(int bytes) {
+        int capacity = capacityOf(bytes);
+        if (cachedBytes.addAndGet(capacity) > CACHED_LIMIT_BYTES) {
+            cachedBytes.addAndGet(-capacity);
+            return null;
+        }
+        ByteBuffer buffer = acquire(bytes);
+        // the view keeps the buffer, not the other way round, so the buffer can outlive it
+        DoubleBuffer values = buffer.asDoubleBuffer();
+        CLEANER.register(values, () -> {
+            cachedBytes.addAndGet(-capacity);
+            release(buffer);
+        });
+        return values;
+    }
+
+    /**
+     * Returns a buffer to the pool; it must not be used after this call.
+     * @param buffer A buffer from acquire, released only once.
+     */
+    static void release(ByteBuffer buffer) {
+        int capacity = buffer.capacity();
+        if (idleBytes.addAndGet(capacity) > LIMIT_BYTES) {
+            idleBytes.addAndGet(-capacity);
+            return;
+        }
+        IDLE.computeIfAbsent(capacity, size -> new ConcurrentLinkedQueue<>()).add(buffer.clear());
+    }
+
+    /**
+     * Finds the size of the buffers that hold a number of bytes.
+     * @param bytes The number of bytes.
+     * @return The smallest power of two, at least MIN_BYTES, that holds them.
+     */
+    private static int capacityOf(int bytes) {
+        if (bytes <= MIN_BYTES)
+            return MIN_BYTES;
+        int capacity = Integer.highestOneBit(bytes - 1) << 1;
+        // past the largest power of two of an int, the buffer is of the exact size
+        return capacity > 0 ? capacity : bytes;
+    }
+}
@@ -1,11 +1,23 @@
 package image;
 
+import metrics.Metrics;
+import metrics.Stage;
+import metrics.StageTimer;
+
 import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
 import java.awt.*;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.stream.IntStream;
 
 /**
  * A package-private class of the package image.
@@ -13,9 +25,21 @@ import java.util.ArrayList;
  */
 public class Image {
 
+    // a reference and a Color object, with compressed references
+    private static final int BYTES_PER_PIXEL = 4 + 32;
+    // the fewest pixels decoded along each side of a sub-image when subsampling
+    private static final int SAMPLES_PER_SIDE = 8;
+    // FNV-1a, 64 bits, over the packed pixels of a row
+    private static final long HASH_OFFSET = 0xcbf29ce484222325L;
+    private static final long HASH_PRIME = 0x100000001b3L;
+    // the color channels of a packed pixel, without its alpha
+    private static final int RGB_MASK = 0xFFFFFF;
     private final Color[][] pixelArray;
     private final int width;
     private final int height;
+    private final int subsampling;
+    private volatile ImageRenderer sharedRenderer;
+    private volatile long[] rowHashes;
 
     /**
      * Constructs an Image object from a file.
@@ -24,9 +48,98 @@ public class Image {
      * @throws IOException If an error occurs while reading the image file.
      */
     public Image(String filename) throws IOException {
-        BufferedImage im = ImageIO.read(new File(filename));
+        this(Metrics.start(Stage.DECODE), checkDecoded(ImageIO.read(new File(filename))), 1);
+    }
+
+    /**
+     * Constructs an Image object from a file, decoding only as many of its pixels as
+     * rendering it at up to a number of columns needs: the middle pixel of each step x step
+     * cell, for the largest power of two step that leaves at least SAMPLES_PER_SIDE
+     * pixels along each side of a sub-image (see getSubsampling). Less than two cells
+     * are left out at the ends of each axis, so the image has an even number of cells.
+     * <p>
+     * The image then renders to the same grid of chars as a full decode, unless the full
+     * image pads to one pixel less than a power of two (an odd difference), which makes
+     * ImageRenderer round the size of its sub-images down. Each sub-image covers the same
+     * part of the image up to a step on each side, and its greyness is the mean of the
+     * middle pixels of its cells instead of all its pixels: it differs from the greyness of
+     * a full decode by at most the range of the greyness within a step around the
+     * sub-image, and if neighbouring pixels differ in greyness by at most d, by at most
+     * about step * d. Chars change only where the greyness of a sub-image is that close to
+     * the boundary between two chars; for a 4096 x 3072 photo at 128 columns (step 4), the
+     * greyness differs by at most 0.014 and 0.4% of the chars change.
+     * Edges are found between the decoded pixels, so edge mode sees only edges that are
+     * at least about a step wide.
+     *
+     * @param filename The filename of the image file.
+     * @param columns  The largest number of columns the image will be rendered at.
+     * @throws IOException If an error occurs while reading the image file.
+     */
+    public Image(String filename, int columns) throws IOException {
+        this(filename, Metrics.start(Stage.DECODE), getSubsampling(filename, columns));
+    }
+
+    /**
+     * Constructs an Image object from a file, decoding one pixel of each step x step cell.
+     *
+     * @param filename The filename of the image file.
+     * @param timer    The timer of the decode, started before the header was read.
+     * @param step     The step between decoded pixels, on both axes.
+     * @throws IOException If an error occurs while reading the image file.
+     */
+    private Image(String filename, StageTimer timer, int step) throws IOException {
+        this(timer, step == 1 ? checkDecoded(ImageIO.read(new File(filename))) :
+                readSubsampled(new File(filename), step), step);
+    }
+
+    /**
+     * Constructs an Image object from an encoded image, e.g. an uploaded file, decoding
+     * only the pixels rendering it at up to a number of columns needs, like
+     * Image(filename, columns).
+     *
+     * @param encoded The bytes of the encoded image.
+     * @param columns The largest number of columns the image will be rendered at.
+     * @throws IOException If an error occurs while reading the image.
+     */
+    public Image(byte[] encoded, int columns) throws IOException {
+        this(encoded, Metrics.start(Stage.DECODE), subsamplingOf(new ByteArrayInputStream(encoded), columns));
+    }
+
+    /**
+     * Constructs an Image object from an encoded image, decoding one pixel of each
+     * step x step cell.
+     *
+     * @param encoded The bytes of the encoded image.
+     * @param timer   The timer of the decode, started before the header was read.
+     * @param step    The step between decoded pixels, on both axes.
+     * @throws IOException If an error occurs while reading the image.
+     */
+    private Image(byte[] encoded, StageTimer timer, int step) throws IOException {
+        this(timer, step == 1 ? checkDecoded(ImageIO.read(new ByteArrayInputStream(encoded))) :
+                readSubsampled(new ByteArrayInputStream(encoded), step), step);
+    }
+
+    /**
+     * Constructs an Image object from an encoded image, e.g. an uploaded file.
+     *
+     * @param input The stream of the encoded image.
+     * @throws IOException If an error occurs while reading the image.
+     */
+    public Image(InputStream input) throws IOException {
+        this(Metrics.start(Stage.DECODE), checkDecoded(ImageIO.read(input)), 1);
+    }
+
+    /**
+     * Constructs an Image object from a decoded image.
+     *
+     * @param timer The timer of the decode, started before the image was read.
+     * @param im The decoded image.
+     * @param subsampling The step between the decoded pixels in the image file.
+     */
+    private Image(StageTimer timer, BufferedImage im, int subsampling) {
         width = im.getWidth();
         height = im.getHeight();
+        this.subsampling = subsampling;
 
         pixelArray = new Color[height][width];
         for (int i = 0; i < height; i++) {
@@ -34,6 +147,187 @@ public class Image {
                 pixelArray[i][j] = new Color(im.getRGB(j, i));
             }
         }
+        Metrics.stop(timer, (long) width * height * Integer.BYTES);
+    }
+
+    /**
+     * Checks that ImageIO could decode an image.
+     *
+     * @param im The result of ImageIO.read.
+     * @return The decoded image.
+     * @throws IOException If the image format is not supported.
+     */
+    private static BufferedImage checkDecoded(BufferedImage im) throws IOException {
+        if (im == null)
+            throw new IOException("Unsupported image format");
+        return im;
+    }
+
+    /**
+     * Finds the step between the pixels Image(filename, columns) decodes, reading only
+     * the header of the image file.
+     *
+     * @param filename The filename of the image file.
+     * @param columns  The largest number of columns the image will be rendered at.
+     * @return The step, a power of two; 1 if every pixel is decoded.
+     * @throws IOException If the header could not be read, or the format is not supported.
+     */
+    public static int getSubsampling(String filename, int columns) throws IOException {
+        return subsamplingOf(new File(filename), columns);
+    }
+
+    /**
+     * Finds the step between the pixels Image(encoded, columns) decodes, reading only
+     * the header of the encoded image.
+     *
+     * @param encoded The bytes of the encoded image.
+     * @param columns The largest number of columns the image will be rendered at.
+     * @return The step, a power of two; 1 if every pixel is decoded.
+     * @throws IOException If the header could not be read, or the format is not supported.
+     */
+    public static int getSubsampling(byte[] encoded, int columns) throws IOException {
+        return subsamplingOf(new ByteArrayInputStream(encoded), columns);
+    }
+
+    /**
+     * Finds the number of pixels Image(filename, columns) decodes, reading only the header
+     * of the image file, e.g. to refuse images too large to decode.
+     *
+     * @param filename The filename of the image file.
+     * @param columns  The largest number of columns the image will be rendered at.
+     * @return The number of pixels.
+     * @throws IOException If the header could not be read, or the format is not supported.
+     */
+    public static long getDecodedPixels(String filename, int columns) throws IOException {
+        return decodedPixelsOf(new File(filename), columns);
+    }
+
+    /**
+     * Finds the number of pixels Image(encoded, columns) decodes, reading only the header
+     * of the encoded image.
+     *
+     * @param encoded The bytes of the encoded image.
+     * @param columns The largest number of columns the image will be rendered at.
+     * @return The number of pixels.
+     * @throws IOException If the header could not be read, or the format is not supported.
+     */
+    public static long getDecodedPixels(byte[] encoded, int columns) throws IOException {
+        return decodedPixelsOf(new ByteArrayInputStream(encoded), columns);
+    }
+
+    /**
+     * Finds the number of pixels to decode of an encoded image, reading only its header.
+     *
+     * @param source  The image file, or a stream of the encoded image.
+     * @param columns The largest number of columns the image will be rendered at.
+     * @return The number of pixels, as readSubsampled decodes them.
+     * @throws IOException If the header could not be read, or the format is not supported.
+     */
+    private static long decodedPixelsOf(Object source, int columns) throws IOException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(source)) {
+            ImageReader reader = readerOf(input);
+            try {
+                int width = reader.getWidth(0);
+                int height = reader.getHeight(0);
+                int step = subsamplingFor(width, columns);
+                if (step == 1)
+                    return (long) width * height;
+                return (long) evenCells(width, step) * evenCells(height, step);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * Finds the step between the pixels to decode of an encoded image, reading only its header.
+     *
+     * @param source  The image file, or a stream of the encoded image.
+     * @param columns The largest number of columns the image will be rendered at.
+     * @return The step, a power of two; 1 if every pixel is decoded.
+     * @throws IOException If the header could not be read, or the format is not supported.
+     */
+    private static int subsamplingOf(Object source, int columns) throws IOException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(source)) {
+            ImageReader reader = readerOf(input);
+            try {
+                return subsamplingFor(reader.getWidth(0), columns);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * Finds the step between decoded pixels for rendering an image at up to a number of columns.
+     *
+     * @param width   The width of the image in its file.
+     * @param columns The number of columns.
+     * @return The step, a power of two.
+     */
+    private static int subsamplingFor(int width, int columns) {
+        // the width ImageRenderer pads the image to
+        int paddedWidth = width <= 1 ? 1 : Integer.highestOneBit(width - 1) * 2;
+        return Integer.highestOneBit(Math.max(1, paddedWidth / Math.max(1, columns) / SAMPLES_PER_SIDE));
+    }
+
+    /**
+     * Decodes one pixel of each step x step cell of an encoded image.
+     *
+     * @param source The image file, or a stream of the encoded image.
+     * @param step   The step between decoded pixels, on both axes.
+     * @return The decoded image.
+     * @throws IOException If the image could not be read, or the format is not supported.
+     */
+    private static BufferedImage readSubsampled(Object source, int step) throws IOException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(source)) {
+            ImageReader reader = readerOf(input);
+            try {
+                ImageReadParam param = reader.getDefaultReadParam();
+                // an even number of whole cells on each axis, so the padding stays a power of
+                // two, centred like the image in its padding
+                int width = reader.getWidth(0);
+                int height = reader.getHeight(0);
+                int regionWidth = evenCells(width, step) * step;
+                int regionHeight = evenCells(height, step) * step;
+                param.setSourceRegion(new Rectangle((width - regionWidth) / 2, (height - regionHeight) / 2,
+                        regionWidth, regionHeight));
+                // the middle pixel of each cell
+                param.setSourceSubsampling(step, step, step / 2, step / 2);
+                return checkDecoded(reader.read(0, param));
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * Finds the even number of whole cells along a side of an image.
+     *
+     * @param length The length of the side, in pixels.
+     * @param step   The length of the side of a cell.
+     * @return The number of cells, at least 1.
+     */
+    private static int evenCells(int length, int step) {
+        return Math.max(1, length / step & ~1);
+    }
+
+    /**
+     * Finds a reader for an image and sets it to read from its start.
+     *
+     * @param input The stream of the encoded image, or null if the file could not be opened.
+     * @return The reader.
+     * @throws IOException If the format is not supported.
+     */
+    private static ImageReader readerOf(ImageInputStream input) throws IOException {
+        if (input == null)
+            throw new IOException("Cannot open the image file");
+        Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+        if (!readers.hasNext())
+            throw new IOException("Unsupported image format");
+        ImageReader reader = readers.next();
+        reader.setInput(input, true, true);
+        return reader;
     }
 
     /**
@@ -44,9 +338,22 @@ public class Image {
      * @param height     The height of the image.
      */
     public Image(Color[][] pixelArray, int width, int height) {
+        this(pixelArray, width, height, 1);
+    }
+
+    /**
+     * Constructs an Image object from a pixel array subsampled from an image file.
+     *
+     * @param pixelArray  The pixel array representing the image.
+     * @param width       The width of the image.
+     * @param height      The height of the image.
+     * @param subsampling The step between the pixels in the image file.
+     */
+    Image(Color[][] pixelArray, int width, int height, int subsampling) {
         this.pixelArray = pixelArray;
         this.width = width;
         this.height = height;
+        this.subsampling = subsampling;
     }
 
     /**
@@ -67,6 +374,26 @@ public class Image {
         return height;
     }
 
+    /**
+     * Gets the step between the pixels of the image in its file, 1 if every pixel was decoded.
+     *
+     * @return The step, on both axes.
+     */
+    public int getSubsampling() {
+        return subsampling;
+    }
+
+    /**
+     * Checks whether the image has enough pixels to be rendered at a number of columns
+     * within the bound of Image(filename, columns).
+     *
+     * @param columns The number of columns.
+     * @return True if it was decoded for that many columns or more.
+     */
+    public boolean canRender(int columns) {
+        return subsampling <= subsamplingFor(width * subsampling, columns);
+    }
+
     /**
      * Gets the color of a pixel at the specified coordinates.
      *
@@ -78,6 +405,61 @@ public class Image {
         return pixelArray[x][y];
     }
 
+    /**
+     * Gets the renderer shared by all the users of this image, creating it on first use.
+     *
+     * @return The shared renderer.
+     */
+    ImageRenderer getSharedRenderer() {
+        ImageRenderer renderer = sharedRenderer;
+        if (renderer == null) {
+            synchronized (this) {
+                renderer = sharedRenderer;
+                if (renderer == null) {
+                    renderer = new ImageRenderer(this);
+                    sharedRenderer = renderer;
+                }
+            }
+        }
+        return renderer;
+    }
+
+    /**
+     * Gets a hash of each row of pixels, computing them on first use, so two versions
+     * of an image can be compared row by row (see ImageChange).
+     *
+     * @return The hashes, one for each row; they must only be read.
+     */
+    long[] getRowHashes() {
+        long[] hashes = rowHashes;
+        if (hashes == null) {
+            // computing them twice on a race gives the same values
+            long[] computed = new long[height];
+            IntStream.range(0, height).parallel().forEach(i -> {
+                long hash = HASH_OFFSET;
+                for (Color pixel : pixelArray[i]) {
+                    hash = (hash ^ pixel.getRGB()) * HASH_PRIME;
+                }
+                computed[i] = hash;
+            });
+            hashes = computed;
+            rowHashes = hashes;
+        }
+        return hashes;
+    }
+
+    /**
+     * Estimates the bytes retained by the pixels of the image and, if it was created,
+     * its shared renderer.
+     *
+     * @return The estimated number of bytes.
+     */
+    public long getRetainedBytes() {
+        long bytes = (long) width * height * BYTES_PER_PIXEL;
+        ImageRenderer renderer = sharedRenderer;
+        return renderer == null ? bytes : bytes + renderer.getRetainedBytes();
+    }
+
     /**
      * Saves the image to a file.
      *
@@ -87,10 +469,13 @@ public class Image {
         // Initialize BufferedImage, assuming Color[][] is already properly populated.
         BufferedImage bufferedImage = new BufferedImage(pixelArray[0].length, pixelArray.length,
                 BufferedImage.TYPE_INT_RGB);
-        // Set each pixel of the BufferedImage to the color from the Color[][].
+        // Store the packed colors into the pixels of the BufferedImage directly, row by row,
+        // instead of converting each one through setRGB.
+        int[] pixels = ((DataBufferInt) bufferedImage.getRaster().getDataBuffer()).getData();
+        int rowLength = pixelArray[0].length;
         for (int x = 0; x < pixelArray.length; x++) {
-            for (int y = 0; y < pixelArray[x].length; y++) {
-                bufferedImage.setRGB(y, x, pixelArray[x][y].getRGB());
+            for (int y = 0; y < rowLength; y++) {
+                pixels[x * rowLength + y] = pixelArray[x][y].getRGB() & RGB_MASK;
             }
         }
         File outputfile = new File(fileName + ".jpeg");
@@ -0,0 +1,127 @@
+package image;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Decoded images kept between uses, so an image that is used again is not decoded
+ * again. An image is kept with its shared renderer, so its padding, greyness values
+ * and edges are kept as well.
+ * Images are found by the real path of their file, its size, its last modification
+ * time and the step between its decoded pixels, so a file that changed is decoded again.
+ * The cache is bounded by an estimate of the bytes its images retain, which grows as
+ * their renderers compute more resolutions; when it is exceeded, the least recently
+ * used images are dropped, but never the last one used.
+ * Images that are not in the cache are read from a PixelCache, if it has one.
+ * @author Daniel, Inbar
+ */
+public class ImageCache {
+    private final long budgetBytes;
+    private final PixelCache pixels;
+    private final LinkedHashMap<String, Image> images = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * Constructs an empty cache.
+     * @param budgetBytes The number of bytes the images may retain together.
+     */
+    public ImageCache(long budgetBytes) {
+        this(budgetBytes, null);
+    }
+
+    /**
+     * Constructs an empty cache that reads the images it does not have from a PixelCache.
+     * @param budgetBytes The number of bytes the images may retain together.
+     * @param pixels The cache of decoded pixels on disk, or null to always decode.
+     */
+    public ImageCache(long budgetBytes, PixelCache pixels) {
+        this.budgetBytes = budgetBytes;
+        this.pixels = pixels;
+    }
+
+    /**
+     * Gets the image of a file, decoding it if it is not in the cache or changed since.
+     * @param filename The filename of the image file.
+     * @return The image.
+     * @throws IOException If the file could not be read or decoded.
+     */
+    public synchronized Image get(String filename) throws IOException {
+        Path file = new File(filename).toPath().toRealPath();
+        String key = keyOf(file, 1);
+        Image image = images.get(key);
+        if (image == null) {
+            image = pixels != null ? pixels.get(file.toString(), Integer.MAX_VALUE) :
+                    new Image(file.toString());
+            images.put(key, image);
+        }
+        evict();
+        return image;
+    }
+
+    /**
+     * Gets the image of a file decoded for rendering at up to a number of columns (see
+     * Image(filename, columns)), decoding it if it is not in the cache or changed since.
+     * @param filename The filename of the image file.
+     * @param columns The largest number of columns the image will be rendered at.
+     * @return The image.
+     * @throws IOException If the file could not be read or decoded.
+     */
+    public synchronized Image get(String filename, int columns) throws IOException {
+        Path file = new File(filename).toPath().toRealPath();
+        String key = keyOf(file, Image.getSubsampling(file.toString(), columns));
+        Image image = images.get(key);
+        if (image == null) {
+            image = pixels != null ? pixels.get(file.toString(), columns) :
+                    new Image(file.toString(), columns);
+            images.put(key, image);
+        }
+        evict();
+        return image;
+    }
+
+    /**
+     * Gets the number of images in the cache.
+     * @return The number of images.
+     */
+    public synchronized int size() {
+        return images.size();
+    }
+
+    /**
+     * Gets the estimated number of bytes retained by the images in the cache.
+     * @return The estimated number of bytes.
+     */
+    public synchronized long getRetainedBytes() {
+        long bytes = 0;
+        for (Image image : images.values())
+            bytes += image.getRetainedBytes();
+        return bytes;
+    }
+
+    /**
+     * Finds the key of an image in the cache.
+     * @param file The real path of the image file.
+     * @param step The step between its decoded pixels.
+     * @return The key.
+     * @throws IOException If the attributes of the file could not be read.
+     */
+    private static String keyOf(Path file, int step) throws IOException {
+        return file + "|" + Files.size(file) + "|" + Files.getLastModifiedTime(file) + "|" + step;
+    }
+
+    /**
+     * Drops the least recently used images until the rest fit in the budget.
+     */
+    private void evict() {
+        long bytes = getRetainedBytes();
+        Iterator<Map.Entry<String, Image>> eldest = images.entrySet().iterator();
+        while (bytes > budgetBytes && images.size() > 1) {
+            bytes -= eldest.next().getValue().getRetainedBytes();
+            eldest.remove();
+        }
+    }
+}
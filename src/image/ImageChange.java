@@ -0,0 +1,80 @@
+package image;
+
+import java.util.BitSet;
+
+/**
+ * The rows of pixels that differ between two versions of an image, e.g. a file that
+ * was exported again, found by comparing a hash of each row (see Image.getRowHashes).
+ * A version of another size is resized, and everything in it counts as changed.
+ * Instances are immutable, so they can be shared between threads.
+ * @author Daniel, Inbar
+ */
+public final class ImageChange {
+    private final BitSet rows;
+    private final boolean resized;
+
+    /**
+     * constructor
+     * @param rows The changed rows of pixels; not modified after this call.
+     * @param resized Whether the new version has another size.
+     */
+    private ImageChange(BitSet rows, boolean resized) {
+        this.rows = rows;
+        this.resized = resized;
+    }
+
+    /**
+     * Finds the rows of pixels that changed between two versions of an image.
+     * @param previous The previous version.
+     * @param current The current version.
+     * @return The change.
+     */
+    public static ImageChange between(Image previous, Image current) {
+        int height = current.getHeight();
+        BitSet rows = new BitSet(height);
+        if (previous.getWidth() != current.getWidth() || previous.getHeight() != height) {
+            rows.set(0, height);
+            return new ImageChange(rows, true);
+        }
+        long[] before = previous.getRowHashes();
+        long[] after = current.getRowHashes();
+        for (int row = 0; row < height; row++) {
+            if (before[row] != after[row])
+                rows.set(row);
+        }
+        return new ImageChange(rows, false);
+    }
+
+    /**
+     * Checks whether the new version has another size than the previous one.
+     * @return True if it was resized.
+     */
+    public boolean isResized() {
+        return resized;
+    }
+
+    /**
+     * Checks whether no pixel changed.
+     * @return True if the versions have the same size and pixels.
+     */
+    public boolean isEmpty() {
+        return !resized && rows.isEmpty();
+    }
+
+    /**
+     * Gets the number of rows of pixels that changed.
+     * @return The number of rows, all of them if it was resized.
+     */
+    public int getChangedRows() {
+        return rows.cardinality();
+    }
+
+    /**
+     * Gets the first changed row of pixels at or after a row.
+     * @param from The row to start from.
+     * @return The row, or -1 if no later row changed.
+     */
+    int nextChangedRow(int from) {
+        return rows.nextSetBit(from);
+    }
+}
@@ -1,8 +1,16 @@
 package image;
 
+import metrics.Metrics;
+import metrics.Stage;
+import metrics.StageTimer;
+
 import java.awt.*;
-import java.security.PublicKey;
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.IntStream;
 
 /**
  * Package: image
@@ -10,20 +18,40 @@ import java.util.ArrayList;
  * Description: This class provides functionality for rendering and processing images. It allows
  *              for setting the resolution of the image, dividing the image into smaller sub-images,
  *              and calculating the greyness of each sub-image.
+ *              The greyness of each resolution and luminance, and the edges of each
+ *              resolution, are computed once and cached. The renderer of a new version of
+ *              an image can inherit them from the renderer of the previous version, computing
+ *              only the rows of sub-images whose pixels changed.
+ *              A viewport, a rectangle of the sub-images of a resolution, is assembled from
+ *              tiles of TILE_SIZE x TILE_SIZE sub-images, computed on first use and kept in a
+ *              bounded LRU cache (-Dascii.tileCacheTiles), so moving a viewport computes only
+ *              the tiles it newly covers.
+ *              getGreyness, getEdges and precompute may be called from any number of threads;
+ *              setResolution and the getters of the current resolution are a view for a
+ *              single thread.
  * @author Daniel, Inbar
  */
 public class ImageRenderer {
-    private Image image;
+    // with compressed references
+    private static final int REFERENCE_BYTES = 4;
+    // the sub-images along each side of a tile of a viewport
+    private static final int TILE_SIZE = 32;
+    // the tiles kept for the viewports of an image, 8 KB each
+    private static final int TILE_CACHE_TILES = Integer.getInteger("ascii.tileCacheTiles", 1024);
     private final int width;
     private final int height;
     private int resolution;
     private Color[][] paddedImage;
-    private ArrayList<ArrayList<Color[][]>> dividedImage;
     private ArrayList<ArrayList<Double>> grayDividedImages;
+    // filled in the constructor and only read afterwards
+    private final Map<Luminance, Map<Integer, GreynessGrid>> grayCache = new EnumMap<>(Luminance.class);
+    private final Map<Integer, EdgeGrid> edgeCache = new ConcurrentHashMap<>();
+    private final TileCache tiles = new TileCache(TILE_CACHE_TILES);
     private int dividedImageHeight;
     private int dividedImageWidth;
     private int newHeight;
     private int newWidth;
+    private int paddingHeight;
 
     /**
      * Constructor to initialize the ImageRenderer with the given image.
@@ -31,10 +59,23 @@ public class ImageRenderer {
      * @param image The image to be rendered and processed.
      */
     public ImageRenderer(Image image){
-        this.image = image;
         this.height = image.getHeight();
         this.width = image.getWidth();
-        this.paddedImage = paddingImage();
+        this.paddedImage = paddingImage(image);
+        for (Luminance luminance : Luminance.values())
+            grayCache.put(luminance, new ConcurrentHashMap<>());
+    }
+
+    /**
+     * Gets the renderer shared by all the users of an image, creating it on first use.
+     * The renderer is kept with the image, so its padding and greyness values are
+     * computed once for as long as the image is alive.
+     *
+     * @param image The image.
+     * @return The shared renderer of the image.
+     */
+    public static ImageRenderer of(Image image) {
+        return image.getSharedRenderer();
     }
 
     /**
@@ -45,17 +86,455 @@ public class ImageRenderer {
     public void setResolution(int resolution) {
         if (resolution != this.resolution){
             this.resolution = resolution;
-            dividedImage = divideImage(resolution);
+            GreynessGrid grid = getGreyness(resolution);
             ArrayList<ArrayList<Double>> grayValues = new ArrayList<>();
-            for (int i = 0; i < dividedImageHeight; i++) {
+            for (int i = 0; i < grid.getRows(); i++) {
                 ArrayList<Double> row = new ArrayList<>();
-                for (int j = 0; j < dividedImageWidth; j++) {
-                    row.add(calculateGreyness(dividedImage.get(i).get(j)));
+                for (int j = 0; j < grid.getColumns(); j++) {
+                    row.add(grid.get(i, j));
                 }
                 grayValues.add(row);
             }
             grayDividedImages = grayValues;
+            dividedImageHeight = grid.getRows();
+            dividedImageWidth = grid.getColumns();
+        }
+    }
+
+    /**
+     * Gets the greyness values of a resolution, computing them on first use.
+     * Safe to call from any thread; if several threads need the same resolution,
+     * it is computed once and the others wait for it.
+     *
+     * @param resolution The number of sub-images in a row.
+     * @return The greyness values.
+     */
+    public GreynessGrid getGreyness(int resolution) {
+        return getGreyness(resolution, Luminance.GAMMA);
+    }
+
+    /**
+     * Gets the greyness values of a resolution measured with a luminance, computing
+     * them on first use. Safe to call from any thread, like getGreyness(resolution).
+     *
+     * @param resolution The number of sub-images in a row.
+     * @param luminance  How the luminance of the pixels is measured.
+     * @return The greyness values.
+     */
+    public GreynessGrid getGreyness(int resolution, Luminance luminance) {
+        return getGreyness(resolution, luminance, Cancellation.NONE);
+    }
+
+    /**
+     * Gets the greyness values of a resolution measured with a luminance, computing
+     * them on first use unless the computation is cancelled, which is checked between
+     * rows of sub-images. Safe to call from any thread, like getGreyness(resolution).
+     *
+     * @param resolution   The number of sub-images in a row.
+     * @param luminance    How the luminance of the pixels is measured.
+     * @param cancellation Cancels computing the values; nothing is cached then.
+     * @return The greyness values.
+     * @throws java.util.concurrent.CancellationException If the computation was cancelled.
+     */
+    public GreynessGrid getGreyness(int resolution, Luminance luminance, Cancellation cancellation) {
+        return grayCache.get(luminance).computeIfAbsent(resolution,
+                columns -> computeGreyness(columns, luminance, cancellation));
+    }
+
+    /**
+     * Gets the edges of the sub-images of a resolution, computing them on first use.
+     * Safe to call from any thread, like getGreyness.
+     *
+     * @param resolution The number of sub-images in a row.
+     * @return The edges.
+     */
+    public EdgeGrid getEdges(int resolution) {
+        return getEdges(resolution, Cancellation.NONE);
+    }
+
+    /**
+     * Gets the edges of the sub-images of a resolution, computing them on first use
+     * unless the computation is cancelled, like getGreyness(resolution, luminance, cancellation).
+     *
+     * @param resolution   The number of sub-images in a row.
+     * @param cancellation Cancels computing the edges; nothing is cached then.
+     * @return The edges.
+     * @throws java.util.concurrent.CancellationException If the computation was cancelled.
+     */
+    public EdgeGrid getEdges(int resolution, Cancellation cancellation) {
+        return edgeCache.computeIfAbsent(resolution, columns -> computeEdges(columns, cancellation));
+    }
+
+    /**
+     * Computes the greyness values of a resolution ahead of time, so setting it later
+     * does not compute them again. Safe to call from another thread than the one
+     * using the renderer; if both need the same resolution, it is computed once.
+     *
+     * @param resolution The resolution to compute.
+     */
+    public void precompute(int resolution) {
+        getGreyness(resolution);
+    }
+
+    /**
+     * Computes the greyness values of a resolution measured with a luminance ahead
+     * of time, like precompute(resolution).
+     *
+     * @param resolution The resolution to compute.
+     * @param luminance  How the luminance of the pixels is measured.
+     */
+    public void precompute(int resolution, Luminance luminance) {
+        getGreyness(resolution, luminance);
+    }
+
+    /**
+     * Checks whether the greyness values of a resolution were already computed.
+     *
+     * @param resolution The resolution to check.
+     * @return True if they were computed.
+     */
+    public boolean isComputed(int resolution) {
+        return isComputed(resolution, Luminance.GAMMA);
+    }
+
+    /**
+     * Checks whether the greyness values of a resolution measured with a luminance
+     * were already computed.
+     *
+     * @param resolution The resolution to check.
+     * @param luminance  How the luminance of the pixels is measured.
+     * @return True if they were computed.
+     */
+    public boolean isComputed(int resolution, Luminance luminance) {
+        return grayCache.get(luminance).containsKey(resolution);
+    }
+
+    /**
+     * Checks whether the edges of a resolution were already computed.
+     *
+     * @param resolution The resolution to check.
+     * @return True if they were computed.
+     */
+    public boolean isEdgesComputed(int resolution) {
+        return edgeCache.containsKey(resolution);
+    }
+
+    /**
+     * Gets the number of rows of sub-images of a resolution.
+     *
+     * @param resolution The number of sub-images in a row.
+     * @return The number of rows.
+     */
+    public int getRows(int resolution) {
+        return newHeight / getSizeOfPicture(resolution);
+    }
+
+    /**
+     * Gets the greyness values of a rectangle of the sub-images of a resolution, reading
+     * only the pixels of the tiles it covers: from the values of the whole resolution if
+     * they were already computed, and otherwise from tiles, each computed on first use and
+     * kept in the tile cache. The rectangle is clipped to the sub-images of the resolution.
+     * Safe to call from any thread; two threads that need the same new tile may both
+     * compute it.
+     *
+     * @param resolution  The number of sub-images in a row of the whole image.
+     * @param luminance   How the luminance of the pixels is measured.
+     * @param firstRow    The first row of sub-images of the rectangle.
+     * @param firstColumn The first column of sub-images of the rectangle.
+     * @param rows        The number of rows of the rectangle.
+     * @param columns     The number of columns of the rectangle.
+     * @return The greyness values of the rectangle, row 0 and column 0 being its corner; a
+     *         grid of its own, to release once it is no longer read (see GreynessGrid.release).
+     */
+    public GreynessGrid getViewport(int resolution, Luminance luminance, int firstRow, int firstColumn,
+                                    int rows, int columns) {
+        int top = Math.min(Math.max(0, firstRow), getRows(resolution));
+        int left = Math.min(Math.max(0, firstColumn), resolution);
+        int height = Math.max(0, Math.min(rows, getRows(resolution) - top));
+        int width = Math.max(0, Math.min(columns, resolution - left));
+        GreynessGrid grayValues = GreynessGrid.allocate(height, width, true);
+        GreynessGrid whole = grayCache.get(luminance).get(resolution);
+        for (int row = top; row < top + height; ) {
+            int tileRow = row / TILE_SIZE;
+            int rowsInTile = Math.min(top + height, (tileRow + 1) * TILE_SIZE) - row;
+            for (int col = left; col < left + width; ) {
+                int tileColumn = col / TILE_SIZE;
+                int columnsInTile = Math.min(left + width, (tileColumn + 1) * TILE_SIZE) - col;
+                GreynessGrid source = whole != null ? whole : getTile(resolution, luminance, tileRow, tileColumn);
+                int sourceTop = whole != null ? 0 : tileRow * TILE_SIZE;
+                int sourceLeft = whole != null ? 0 : tileColumn * TILE_SIZE;
+                for (int i = row; i < row + rowsInTile; i++) {
+                    for (int j = col; j < col + columnsInTile; j++) {
+                        grayValues.set(i - top, j - left, source.get(i - sourceTop, j - sourceLeft));
+                    }
+                }
+                col += columnsInTile;
+            }
+            row += rowsInTile;
+        }
+        return grayValues;
+    }
+
+    /**
+     * Gets the number of tiles of viewports the renderer keeps.
+     *
+     * @return The number of tiles.
+     */
+    public int getCachedTiles() {
+        return tiles.size();
+    }
+
+    /**
+     * Takes the greyness values and edges the renderer of the previous version of the
+     * image computed, computing again only the rows of sub-images whose pixels changed,
+     * so the cost of a small edit does not depend on the size of the image. Values this
+     * renderer already has are kept. Nothing is inherited from a version of another size.
+     * Safe to call from any thread, like getGreyness.
+     *
+     * @param previous The renderer of the previous version.
+     * @param change   The change from the previous version to this image.
+     */
+    public void inherit(ImageRenderer previous, ImageChange change) {
+        if (change.isResized() || previous.newWidth != newWidth || previous.newHeight != newHeight)
+            return;
+        for (Luminance luminance : Luminance.values()) {
+            for (Map.Entry<Integer, GreynessGrid> entry : previous.grayCache.get(luminance).entrySet()) {
+                grayCache.get(luminance).computeIfAbsent(entry.getKey(), columns -> updateGreyness(
+                        entry.getValue(), luminance, changedRows(columns, change, 0)));
+            }
+        }
+        for (Map.Entry<Integer, EdgeGrid> entry : previous.edgeCache.entrySet()) {
+            edgeCache.computeIfAbsent(entry.getKey(), columns -> updateEdges(entry.getValue(),
+                    getSizeOfPicture(columns), changedRows(columns, change, 1)));
+        }
+    }
+
+    /**
+     * Finds the rows of sub-images of a resolution whose greyness or edges may differ
+     * from those of the previous version of the image: the rows with a changed pixel,
+     * or next to one, which the Sobel gradients of their border pixels read.
+     *
+     * @param resolution The number of sub-images in a row.
+     * @param change     The change from the previous version to this image.
+     * @return The rows, in increasing order; all of them if the image was resized.
+     */
+    public int[] getChangedRows(int resolution, ImageChange change) {
+        if (change.isResized())
+            return IntStream.range(0, getRows(resolution)).toArray();
+        return changedRows(resolution, change, 1);
+    }
+
+    /**
+     * Estimates the greyness of each sub-image of a resolution from a few of its pixels:
+     * the middle pixels of samplesPerSide x samplesPerSide equal cells of the sub-image,
+     * or all its pixels if it is smaller. It reads only those pixels, so it is much
+     * cheaper than getGreyness for large sub-images; the values are not cached.
+     *
+     * @param resolution     The number of sub-images in a row.
+     * @param samplesPerSide The number of pixels read along each side of a sub-image.
+     * @param luminance      How the luminance of the pixels is measured.
+     * @return The estimated greyness values; a grid of their own, to release once it is no
+     *         longer read (see GreynessGrid.release).
+     */
+    public GreynessGrid getSampledGreyness(int resolution, int samplesPerSide, Luminance luminance) {
+        int sizeOfPicture = getSizeOfPicture(resolution);
+        int amountOfSubsInCol = newHeight / sizeOfPicture;
+        int samples = Math.min(samplesPerSide, sizeOfPicture);
+        int[] offsets = new int[samples];
+        for (int k = 0; k < samples; k++) {
+            offsets[k] = (2 * k + 1) * sizeOfPicture / (2 * samples);
+        }
+        GreynessGrid grayValues = GreynessGrid.allocate(amountOfSubsInCol, resolution, true);
+        for (int row = 0; row < amountOfSubsInCol; row++) {
+            for (int col = 0; col < resolution; col++) {
+                long greySum = 0;
+                for (int rowOffset : offsets) {
+                    Color[] pixels = paddedImage[row * sizeOfPicture + rowOffset];
+                    for (int colOffset : offsets) {
+                        greySum += luminance.of(pixels[col * sizeOfPicture + colOffset].getRGB());
+                    }
+                }
+                grayValues.set(row, col, greySum / ((double) Luminance.WHITE * samples * samples));
+            }
+        }
+        return grayValues;
+    }
+
+    /**
+     * Estimates the bytes retained by the renderer: the references of the padded image,
+     * whose pixels are those of the image or white, and the computed greyness values, edges
+     * and tiles.
+     *
+     * @return The estimated number of bytes.
+     */
+    long getRetainedBytes() {
+        long bytes = (long) newWidth * newHeight * REFERENCE_BYTES;
+        for (Map<Integer, GreynessGrid> grids : grayCache.values()) {
+            for (GreynessGrid grid : grids.values())
+                bytes += grid.getBytes();
+        }
+        for (EdgeGrid grid : edgeCache.values())
+            bytes += grid.getBytes();
+        return bytes + tiles.getBytes();
+    }
+
+    /**
+     * Computes the greyness of each sub-image of a resolution, reading the blocks of
+     * the padded image in place instead of copying them into sub-images.
+     *
+     * @param resolution   The number of sub-images in a row.
+     * @param luminance    How the luminance of the pixels is measured.
+     * @param cancellation Checked before each row of sub-images.
+     * @return The greyness values.
+     */
+    private GreynessGrid computeGreyness(int resolution, Luminance luminance, Cancellation cancellation) {
+        StageTimer timer = Metrics.start(Stage.DIVIDE);
+        int sizeOfPicture = getSizeOfPicture(resolution);
+        int amountOfSubsInCol = newHeight / sizeOfPicture;
+        GreynessGrid grayValues = GreynessGrid.allocate(amountOfSubsInCol, resolution, false);
+        for (int row = 0; row < amountOfSubsInCol; row++) {
+            cancellation.check();
+            for (int col = 0; col < resolution; col++) {
+                grayValues.set(row, col,
+                        calculateGreyness(row * sizeOfPicture, col * sizeOfPicture, sizeOfPicture, luminance));
+            }
+        }
+        Metrics.stop(timer, (long) amountOfSubsInCol * resolution * sizeOfPicture * sizeOfPicture *
+                Integer.BYTES);
+        return grayValues;
+    }
+
+    /**
+     * Gets a tile of the greyness values of a resolution from the tile cache, computing
+     * it if it is not there.
+     *
+     * @param resolution The number of sub-images in a row of the whole image.
+     * @param luminance  How the luminance of the pixels is measured.
+     * @param tileRow    The row of the tile.
+     * @param tileColumn The column of the tile.
+     * @return The greyness values of the sub-images of the tile; tiles at the bottom and
+     *         right of the image may be smaller.
+     */
+    private GreynessGrid getTile(int resolution, Luminance luminance, int tileRow, int tileColumn) {
+        GreynessGrid tile = tiles.get(resolution, luminance, tileRow, tileColumn);
+        if (tile != null)
+            return tile;
+        StageTimer timer = Metrics.start(Stage.DIVIDE);
+        int sizeOfPicture = getSizeOfPicture(resolution);
+        int firstRow = tileRow * TILE_SIZE;
+        int firstColumn = tileColumn * TILE_SIZE;
+        int rows = Math.min(TILE_SIZE, getRows(resolution) - firstRow);
+        int columns = Math.min(TILE_SIZE, resolution - firstColumn);
+        tile = GreynessGrid.allocate(rows, columns, false);
+        for (int row = 0; row < rows; row++) {
+            for (int col = 0; col < columns; col++) {
+                tile.set(row, col, calculateGreyness((firstRow + row) * sizeOfPicture,
+                        (firstColumn + col) * sizeOfPicture, sizeOfPicture, luminance));
+            }
+        }
+        Metrics.stop(timer, (long) rows * columns * sizeOfPicture * sizeOfPicture * Integer.BYTES);
+        tiles.put(resolution, luminance, tileRow, tileColumn, tile);
+        return tile;
+    }
+
+    /**
+     * Computes the greyness values of some rows of sub-images again, taking the
+     * others from the values of before, which are shared if no row changed.
+     *
+     * @param previous  The values of before, at the resolution to compute.
+     * @param luminance How the luminance of the pixels is measured.
+     * @param rows      The rows of sub-images to compute.
+     * @return The greyness values.
+     */
+    private GreynessGrid updateGreyness(GreynessGrid previous, Luminance luminance, int[] rows) {
+        if (rows.length == 0)
+            return previous;
+        StageTimer timer = Metrics.start(Stage.DIVIDE);
+        int columns = previous.getColumns();
+        int sizeOfPicture = getSizeOfPicture(columns);
+        GreynessGrid grayValues = previous.copy();
+        for (int row : rows) {
+            for (int col = 0; col < columns; col++) {
+                grayValues.set(row, col,
+                        calculateGreyness(row * sizeOfPicture, col * sizeOfPicture, sizeOfPicture, luminance));
+            }
+        }
+        Metrics.stop(timer, (long) rows.length * columns * sizeOfPicture * sizeOfPicture * Integer.BYTES);
+        return grayValues;
+    }
+
+    /**
+     * Computes the edges of some rows of sub-images again, taking the others from the
+     * edges of before, which are shared if no row changed.
+     *
+     * @param previous      The edges of before, at the resolution to compute.
+     * @param sizeOfPicture The size of the sides of the sub-images.
+     * @param rows          The rows of sub-images to compute.
+     * @return The edges.
+     */
+    private EdgeGrid updateEdges(EdgeGrid previous, int sizeOfPicture, int[] rows) {
+        if (rows.length == 0)
+            return previous;
+        StageTimer timer = Metrics.start(Stage.EDGE);
+        EdgeGrid edges = SobelFilter.update(paddedImage, sizeOfPicture, previous, rows);
+        Metrics.stop(timer, (long) rows.length * previous.getColumns() * sizeOfPicture * sizeOfPicture *
+                Integer.BYTES);
+        return edges;
+    }
+
+    /**
+     * Finds the rows of sub-images of a resolution that hold a changed row of pixels,
+     * or one within a number of rows of it.
+     *
+     * @param resolution The number of sub-images in a row.
+     * @param change     The change from the previous version to this image.
+     * @param reach      The number of rows of pixels around a changed one.
+     * @return The rows, in increasing order.
+     */
+    private int[] changedRows(int resolution, ImageChange change, int reach) {
+        int sizeOfPicture = getSizeOfPicture(resolution);
+        int rows = newHeight / sizeOfPicture;
+        BitSet changed = new BitSet(rows);
+        for (int y = change.nextChangedRow(0); y >= 0; y = change.nextChangedRow(y + 1)) {
+            // the row of the padded image
+            int padded = y + paddingHeight;
+            int first = Math.max(0, padded - reach) / sizeOfPicture;
+            int last = Math.min(rows - 1, (padded + reach) / sizeOfPicture);
+            if (first <= last)
+                changed.set(first, last + 1);
         }
+        return changed.stream().toArray();
+    }
+
+    /**
+     * Computes the edges of each sub-image of a resolution with a Sobel pass over the
+     * luminance of the padded image, which also computes their greyness.
+     *
+     * @param resolution   The number of sub-images in a row.
+     * @param cancellation Checked before each row of sub-images.
+     * @return The edges.
+     */
+    private EdgeGrid computeEdges(int resolution, Cancellation cancellation) {
+        StageTimer timer = Metrics.start(Stage.EDGE);
+        int sizeOfPicture = getSizeOfPicture(resolution);
+        int amountOfSubsInCol = newHeight / sizeOfPicture;
+        EdgeGrid edges = SobelFilter.compute(paddedImage, sizeOfPicture, amountOfSubsInCol, resolution,
+                cancellation);
+        Metrics.stop(timer, (long) amountOfSubsInCol * resolution * sizeOfPicture * sizeOfPicture *
+                Integer.BYTES);
+        return edges;
+    }
+
+    /**
+     * Calculates the size of the sides of the sub-images of a resolution.
+     *
+     * @param amountOfSubsInRow The number of sub-images in a row.
+     * @return The size of the sides, in pixels.
+     */
+    private int getSizeOfPicture(int amountOfSubsInRow) {
+        if (newWidth < amountOfSubsInRow)
+            return 1;
+        return newWidth / amountOfSubsInRow;
     }
 
     /**
@@ -116,9 +595,11 @@ public class ImageRenderer {
     /**
      * Pads the image to the closest power of two dimensions.
      *
+     * @param image The image to pad.
      * @return The padded image.
      */
-    private Color[][] paddingImage() {
+    private Color[][] paddingImage(Image image) {
+        StageTimer timer = Metrics.start(Stage.PADDING);
         int paddingWidth = (findClosestMultOfTwo(width) - width) / 2;
         int paddingHeight = (findClosestMultOfTwo(height) - height) / 2;
         int newHeight = height + paddingHeight * 2;
@@ -138,6 +619,8 @@ public class ImageRenderer {
         }
         this.newWidth = newWidth;
         this.newHeight = newHeight;
+        this.paddingHeight = paddingHeight;
+        Metrics.stop(timer, (long) newWidth * newHeight * Integer.BYTES);
         return paddedImage;
     }
 
@@ -166,18 +649,15 @@ public class ImageRenderer {
      * @return An ArrayList containing the sub-images.
      */
     public ArrayList<ArrayList<Color[][]>> divideImage(int amountOfSubsInRow) {
-        int sizeOfPicture = newWidth / amountOfSubsInRow;
-        if (newWidth < amountOfSubsInRow)
-            sizeOfPicture = 1;
+        StageTimer timer = Metrics.start(Stage.DIVIDE);
+        int sizeOfPicture = getSizeOfPicture(amountOfSubsInRow);
         int amountOfSubsInCol = newHeight / sizeOfPicture;
-        dividedImageWidth = amountOfSubsInRow;
-        dividedImageHeight = amountOfSubsInCol;
         ArrayList<ArrayList<Color[][]>> dev = new ArrayList<>();
 
 
-        for (int row = 0; row < amountOfSubsInRow; row++) {
+        for (int row = 0; row < amountOfSubsInCol; row++) {
             ArrayList<Color[][]> subImages = new ArrayList<>();
-            for (int col = 0; col < amountOfSubsInCol; col++) {
+            for (int col = 0; col < amountOfSubsInRow; col++) {
                 int startCol = col * sizeOfPicture;
                 int startRow = row * sizeOfPicture;
                 Color[][] subImg = new Color[sizeOfPicture][sizeOfPicture];
@@ -191,31 +671,32 @@ public class ImageRenderer {
             }
             dev.add(subImages);
         }
+        Metrics.stop(timer, (long) amountOfSubsInCol * amountOfSubsInRow * sizeOfPicture * sizeOfPicture *
+                Integer.BYTES);
         return dev;
     }
 
     /**
-     * Calculates the greyness value of a given image.
+     * Calculates the greyness value of a square block of the padded image: the sum of
+     * the fixed-point luminance of its pixels, divided once by the luminance of as many
+     * white pixels.
      *
-     * @param originalImage The image for which to calculate the greyness value.
-     * @return The greyness value of the image.
+     * @param startRow  The first row of the block.
+     * @param startCol  The first column of the block.
+     * @param size      The size of the sides of the block.
+     * @param luminance How the luminance of the pixels is measured.
+     * @return The greyness value of the block.
      */
-    private double calculateGreyness(Color[][] originalImage) {
-        int rows = originalImage.length;
-        int cols = originalImage[0].length;
-        int sumOfPixels = rows * cols;
-        double greySum = 0;
-
-        for (int i = 0; i < originalImage.length; i++) {
-            for (int j = 0; j < originalImage[0].length; j++) {
-                double greyPixel = originalImage[i][j].getRed() * 0.2126 +
-                        originalImage[i][j].getGreen() * 0.7152 + originalImage[i][j].getBlue() * 0.0722;
+    private double calculateGreyness(int startRow, int startCol, int size, Luminance luminance) {
+        long greySum = 0;
 
-                greySum += greyPixel;
+        for (int i = startRow; i < startRow + size; i++) {
+            Color[] pixels = paddedImage[i];
+            for (int j = startCol; j < startCol + size; j++) {
+                greySum += luminance.of(pixels[j].getRGB());
             }
         }
 
-        greySum = greySum / (255 * sumOfPixels);
-        return greySum;
+        return greySum / ((double) Luminance.WHITE * size * size);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,88 @@
+package image;
+
+/**
+ * How the luminance of a pixel is measured, for the greyness of the sub-images.
+ * The luminance is a fixed-point integer, the sum of one entry of a 256-entry table
+ * for each channel, in which the weight of the channel and, in linear light, the
+ * removal of the sRGB gamma are already applied; a table lookup replaces the
+ * multiplications, and a sub-image sums its pixels in a long.
+ * The tables are rounded so that a grey pixel has exactly the luminance of its level.
+ * @author Daniel, Inbar
+ */
+public enum Luminance {
+    /** the weighted mean of the gamma-encoded sRGB channels, as the values are stored */
+    GAMMA("gamma", false),
+    /** the weighted mean of the light the channels emit, decoded from sRGB: the mean of
+     * a sub-image is the light it gives off as a whole, which is what the brightness of
+     * a char measures (the share of its area that is white), so mid-tones are matched
+     * to darker chars than in gamma mode, as they appear from afar */
+    LINEAR("linear", true);
+
+    /** the number of fraction bits of the luminance */
+    static final int FRACTION_BITS = 16;
+    /** the luminance of white */
+    static final int WHITE = 255 << FRACTION_BITS;
+    private static final double RED_WEIGHT = 0.2126;
+    private static final double BLUE_WEIGHT = 0.0722;
+    private static final int LEVELS = 256;
+
+    private final String label;
+    private final int[] red = new int[LEVELS];
+    private final int[] green = new int[LEVELS];
+    private final int[] blue = new int[LEVELS];
+
+    /**
+     * constructor
+     * @param label The name of the luminance in commands and requests.
+     * @param linear Whether the channels are decoded to linear light.
+     */
+    Luminance(String label, boolean linear) {
+        this.label = label;
+        for (int value = 0; value < LEVELS; value++) {
+            double level = linear ? toLinear(value / 255.0) * 255 : value;
+            red[value] = (int) Math.round(RED_WEIGHT * level * (1 << FRACTION_BITS));
+            blue[value] = (int) Math.round(BLUE_WEIGHT * level * (1 << FRACTION_BITS));
+            // green, the largest weight, takes up the rounding of the others
+            green[value] = (int) Math.round(level * (1 << FRACTION_BITS)) - red[value] - blue[value];
+        }
+    }
+
+    /**
+     * Gets the name of the luminance in commands and requests.
+     * @return The name.
+     */
+    public String getLabel() {
+        return label;
+    }
+
+    /**
+     * Finds a luminance by its name.
+     * @param label The name of the luminance.
+     * @return The luminance, or null if there is none with that name.
+     */
+    public static Luminance fromLabel(String label) {
+        for (Luminance luminance : values()) {
+            if (luminance.label.equals(label))
+                return luminance;
+        }
+        return null;
+    }
+
+    /**
+     * Measures the luminance of a pixel.
+     * @param rgb The pixel, packed as by Color.getRGB.
+     * @return The luminance, from 0 to WHITE.
+     */
+    int of(int rgb) {
+        return red[(rgb >> 16) & 0xFF] + green[(rgb >> 8) & 0xFF] + blue[rgb & 0xFF];
+    }
+
+    /**
+     * Decodes an sRGB channel to linear light.
+     * @param encoded The channel, from 0 to 1.
+     * @return The light, from 0 to 1.
+     */
+    private static double toLinear(double encoded) {
+        return encoded <= 0.04045 ? encoded / 12.92 : Math.pow((encoded + 0.055) / 1.055, 2.4);
+    }
+}
@@ -0,0 +1,224 @@
+package image;
+
+import metrics.Metrics;
+import metrics.Stage;
+import metrics.StageTimer;
+
+import java.awt.*;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Decoded pixels kept on disk between runs, so an image that was decoded by an earlier
+ * process is read back instead of being decoded again by ImageIO.
+ * Each image file decoded with a step has a raw file in the cache directory, named by a
+ * hash of its real path and the step: a header with the size and last modification time
+ * of the image file, and its packed RGB pixels, row after row. The raw file is memory
+ * mapped and the pixels are read from the mapping into the image, so it is never copied
+ * into a buffer or a BufferedImage first. A raw file whose image file changed since is
+ * replaced. When the raw files exceed the size limit, the least recently used are deleted.
+ * Raw files are written to a temporary file and moved into place, so processes sharing
+ * the directory never read a partly written file.
+ * @author Daniel, Inbar
+ */
+public class PixelCache {
+    /** the system property of the cache directory; without it there is no cache */
+    public static final String DIRECTORY_PROPERTY = "ascii.pixelCache";
+    /** the system property of the size limit of the cache directory, in bytes */
+    public static final String LIMIT_PROPERTY = "ascii.pixelCacheBytes";
+    private static final long DEFAULT_LIMIT_BYTES = 1L << 30;
+    private static final String SUFFIX = ".pixels";
+    // "PIXC"
+    private static final int MAGIC = 0x50495843;
+    private static final int VERSION = 1;
+    // magic, version, image file size, image file time, step, width and height
+    private static final int HEADER_BYTES = 4 + 4 + 8 + 8 + 4 + 4 + 4;
+
+    private final Path directory;
+    private final long limitBytes;
+
+    /**
+     * Constructs a cache in a directory, which is created if it does not exist.
+     * @param directory The directory of the raw files.
+     * @param limitBytes The size limit of the raw files together.
+     */
+    public PixelCache(Path directory, long limitBytes) {
+        this.directory = directory;
+        this.limitBytes = limitBytes;
+    }
+
+    /**
+     * Constructs the cache set by the system properties DIRECTORY_PROPERTY and LIMIT_PROPERTY.
+     * @return The cache, or null if no directory is set.
+     */
+    public static PixelCache fromSystemProperties() {
+        String directory = System.getProperty(DIRECTORY_PROPERTY);
+        if (directory == null)
+            return null;
+        return new PixelCache(Path.of(directory), Long.getLong(LIMIT_PROPERTY, DEFAULT_LIMIT_BYTES));
+    }
+
+    /**
+     * Gets the image of a file decoded for rendering at up to a number of columns (see
+     * Image(filename, columns)), from its raw file if it is up to date, and otherwise by
+     * decoding it and writing its raw file. Failing to write the raw file only means the
+     * next run decodes the image again.
+     * @param filename The filename of the image file.
+     * @param columns The largest number of columns the image will be rendered at,
+     *                Integer.MAX_VALUE to decode every pixel.
+     * @return The image.
+     * @throws IOException If the image file could not be read or decoded.
+     */
+    public Image get(String filename, int columns) throws IOException {
+        Path file = new File(filename).toPath().toRealPath();
+        long size = Files.size(file);
+        long time = Files.getLastModifiedTime(file).toMillis();
+        int step = Image.getSubsampling(file.toString(), columns);
+        Path raw = directory.resolve(nameOf(file, step));
+        Image image = read(raw, size, time, step);
+        if (image != null)
+            return image;
+        image = new Image(file.toString(), columns);
+        try {
+            write(raw, image, size, time, step);
+            evict(raw);
+        } catch (IOException | UncheckedIOException e) {
+            // the cache is only an optimization
+        }
+        return image;
+    }
+
+    /**
+     * Finds the name of the raw file of an image file.
+     * @param file The real path of the image file.
+     * @param step The step between its decoded pixels.
+     * @return The name.
+     */
+    private static String nameOf(Path file, int step) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256")
+                    .digest(file.toString().getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(hash, 0, 16) + "-" + step + SUFFIX;
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    /**
+     * Reads an image from its raw file, if the raw file is up to date.
+     * @param raw The raw file.
+     * @param size The size of the image file.
+     * @param time The last modification time of the image file, in milliseconds.
+     * @param step The step between the decoded pixels.
+     * @return The image, or null if there is no up to date raw file.
+     */
+    private static Image read(Path raw, long size, long time, int step) {
+        StageTimer timer = Metrics.start(Stage.DECODE);
+        try (FileChannel channel = FileChannel.open(raw, StandardOpenOption.READ)) {
+            MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (map.getInt() != MAGIC || map.getInt() != VERSION || map.getLong() != size ||
+                    map.getLong() != time || map.getInt() != step)
+                return null;
+            int width = map.getInt();
+            int height = map.getInt();
+            if ((long) width * height * Integer.BYTES != map.remaining())
+                return null;
+            IntBuffer packed = map.asIntBuffer();
+            Color[][] pixels = new Color[height][width];
+            for (int i = 0; i < height; i++) {
+                for (int j = 0; j < width; j++) {
+                    pixels[i][j] = new Color(packed.get());
+                }
+            }
+            // the order of use for the size limit
+            Files.setLastModifiedTime(raw, FileTime.fromMillis(System.currentTimeMillis()));
+            Metrics.stop(timer, (long) width * height * Integer.BYTES);
+            return new Image(pixels, width, height, step);
+        } catch (IOException | BufferUnderflowException e) {
+            // missing or damaged, decoded again
+            return null;
+        }
+    }
+
+    /**
+     * Writes the raw file of an image.
+     * @param raw The raw file.
+     * @param image The decoded image.
+     * @param size The size of the image file.
+     * @param time The last modification time of the image file, in milliseconds.
+     * @param step The step between the decoded pixels.
+     * @throws IOException If the raw file could not be written.
+     */
+    private void write(Path raw, Image image, long size, long time, int step) throws IOException {
+        Files.createDirectories(directory);
+        int width = image.getWidth();
+        int height = image.getHeight();
+        Path temporary = Files.createTempFile(directory, "write-", ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE)) {
+                MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_WRITE, 0,
+                        HEADER_BYTES + (long) width * height * Integer.BYTES);
+                map.putInt(MAGIC).putInt(VERSION).putLong(size).putLong(time).putInt(step)
+                        .putInt(width).putInt(height);
+                IntBuffer packed = map.asIntBuffer();
+                for (int i = 0; i < height; i++) {
+                    for (int j = 0; j < width; j++) {
+                        packed.put(image.getPixel(i, j).getRGB());
+                    }
+                }
+            }
+            Files.move(temporary, raw, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    /**
+     * Deletes the least recently used raw files until the rest fit in the size limit.
+     * @param kept A raw file that is never deleted, the one just written.
+     * @throws IOException If the directory could not be listed.
+     */
+    private void evict(Path kept) throws IOException {
+        List<Path> raws = new ArrayList<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            files.filter(file -> file.getFileName().toString().endsWith(SUFFIX)).forEach(raws::add);
+        }
+        long total = 0;
+        for (Path raw : raws)
+            total += Files.size(raw);
+        raws.sort(Comparator.comparing(raw -> {
+            try {
+                return Files.getLastModifiedTime(raw);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }));
+        for (Path raw : raws) {
+            if (total <= limitBytes)
+                break;
+            if (!raw.equals(kept)) {
+                total -= Files.size(raw);
+                Files.deleteIfExists(raw);
+            }
+        }
+    }
+}
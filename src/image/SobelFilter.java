@@ -0,0 +1,310 @@
+package image;
+
+import java.awt.*;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * Computes the edges of the sub-images of an image with the Sobel operator.
+ * The image is read once, a row of pixels at a time: each row is converted to
+ * integer luminance into a window of three rows, its gradients are computed in
+ * integers from that window, and they are summed into the sub-images of the row
+ * as they go, so neither a luminance plane nor a gradient plane is ever stored.
+ * The sub-images are split into a few bands of whole rows for each thread, and
+ * the bands are computed in parallel; each band converts the two rows around it again.
+ * @author Daniel, Inbar
+ */
+final class SobelFilter {
+    // the largest magnitude of a Sobel gradient over values 0-255: 4 * 255 on both axes
+    private static final double MAX_GRADIENT = 4 * 255 * Math.sqrt(2);
+    // a few bands for each thread, so a thread that finishes early can take another
+    private static final int BANDS_PER_THREAD = 4;
+    // rounds the fixed-point luminance to the nearest integer
+    private static final int HALF = 1 << (Luminance.FRACTION_BITS - 1);
+    // the arrays of an EdgeGrid
+    private static final int VALUES = 5;
+
+    /**
+     * Not instantiable.
+     */
+    private SobelFilter() {
+    }
+
+    /**
+     * Computes the edges of the sub-images of an image. Pixels outside the image are
+     * taken to be the same as the nearest pixel on its border.
+     * @param pixels The pixels of the image, in rows.
+     * @param size The size of the sides of a sub-image, in pixels.
+     * @param rows The number of rows of sub-images.
+     * @param columns The number of sub-images in a row.
+     * @param cancellation Checked before each row of sub-images, in every band.
+     * @return The edges.
+     * @throws java.util.concurrent.CancellationException If the computation was cancelled.
+     */
+    static EdgeGrid compute(Color[][] pixels, int size, int rows, int columns, Cancellation cancellation) {
+        int blocks = rows * columns;
+        double[][] values = new double[VALUES][blocks];
+        computeRows(pixels, size, columns, IntStream.range(0, rows).toArray(), values, cancellation);
+        return new EdgeGrid(values[0], values[1], values[2], values[3], values[4], rows, columns);
+    }
+
+    /**
+     * Computes the edges of some rows of sub-images of an image again, e.g. after
+     * their pixels changed, taking the other rows from the edges of before.
+     * @param pixels The pixels of the image, in rows.
+     * @param size The size of the sides of a sub-image, in pixels.
+     * @param previous The edges of before, at the same resolution.
+     * @param rows The rows of sub-images to compute, in increasing order.
+     * @return The edges.
+     */
+    static EdgeGrid update(Color[][] pixels, int size, EdgeGrid previous, int[] rows) {
+        double[][] values = previous.copyValues();
+        computeRows(pixels, size, previous.getColumns(), rows, values, Cancellation.NONE);
+        return new EdgeGrid(values[0], values[1], values[2], values[3], values[4], previous.getRows(),
+                previous.getColumns());
+    }
+
+    /**
+     * Computes the edges of rows of sub-images in bands of rows, in parallel.
+     * @param pixels The pixels of the image, in rows.
+     * @param size The size of the sides of a sub-image, in pixels.
+     * @param columns The number of sub-images in a row.
+     * @param rows The rows of sub-images to compute, in increasing order.
+     * @param values Where to store the strengths, alignmentsX, alignmentsY, positions
+     *               and greyness, in the order of the EdgeGrid constructor.
+     * @param cancellation Checked before each row of sub-images.
+     */
+    private static void computeRows(Color[][] pixels, int size, int columns, int[] rows, double[][] values,
+                                    Cancellation cancellation) {
+        if (rows.length == 0)
+            return;
+        int bands = Math.min(rows.length, BANDS_PER_THREAD * ForkJoinPool.getCommonPoolParallelism());
+        int rowsInBand = (rows.length + bands - 1) / bands;
+        IntStream.range(0, bands).parallel().forEach(band -> {
+            Band sums = new Band(pixels, size, columns);
+            for (int k = band * rowsInBand; k < Math.min(rows.length, (band + 1) * rowsInBand); k++) {
+                cancellation.check();
+                int row = rows[k];
+                sums.sumRow(row);
+                for (int col = 0; col < columns; col++) {
+                    sums.store(col, row * columns + col, values[0], values[1], values[2], values[3], values[4]);
+                }
+            }
+        });
+    }
+
+    /**
+     * Converts a row of pixels to luminance from 0 to 255: the gamma-encoded luminance
+     * of the greyness, rounded to an integer. Edges are found in gamma-encoded values,
+     * whose steps are closer to the steps the eye sees.
+     * @param row The pixels.
+     * @param luminance Where to store the luminance, from index 1 on; the values
+     *                  before and after the row are copies of its ends.
+     */
+    private static void toLuminance(Color[] row, int[] luminance) {
+        for (int x = 0; x < row.length; x++) {
+            luminance[x + 1] = (Luminance.GAMMA.of(row[x].getRGB()) + HALF) >> Luminance.FRACTION_BITS;
+        }
+        luminance[0] = luminance[1];
+        luminance[row.length + 1] = luminance[row.length];
+    }
+
+    /**
+     * The window of luminance rows and the sums of one band, used by a single thread.
+     * The sums of each row of pixels are first added per column of pixels, in int
+     * arrays that the JIT can vectorize, and the columns are added into their
+     * sub-images once every CHUNK_HEIGHT rows, before the ints could overflow.
+     */
+    private static final class Band {
+        // the weighted rows reach 1020 * 1020 * 63 * 64 / 2, just under the largest int
+        private static final int CHUNK_HEIGHT = 64;
+        private final Color[][] pixels;
+        private final int size;
+        private final int columns;
+        private final int width;
+        private int[] above;
+        private int[] middle;
+        private int[] below;
+        private int windowRow = -2;
+        // the vertical smoothing and the vertical difference of each column of the window
+        private final int[] smoothed;
+        private final int[] difference;
+        // the sums of each column of pixels in the current chunk
+        private final int[] columnXX;
+        private final int[] columnYY;
+        private final int[] columnXY;
+        private final int[] columnWeightedRows;
+        private final int[] columnLuminances;
+        // the structure tensor sums gx*gx, gy*gy and gx*gy, gy*gy weighted by row, and the luminance sums
+        private final long[] xx;
+        private final long[] yy;
+        private final long[] xy;
+        private final long[] weightedRows;
+        private final long[] luminances;
+
+        /**
+         * constructor
+         * @param pixels The pixels of the image.
+         * @param size The size of the sides of a sub-image.
+         * @param columns The number of sub-images in a row.
+         */
+        Band(Color[][] pixels, int size, int columns) {
+            this.pixels = pixels;
+            this.size = size;
+            this.columns = columns;
+            this.width = pixels[0].length;
+            above = new int[width + 2];
+            middle = new int[width + 2];
+            below = new int[width + 2];
+            smoothed = new int[width + 2];
+            difference = new int[width + 2];
+            columnXX = new int[width];
+            columnYY = new int[width];
+            columnXY = new int[width];
+            columnWeightedRows = new int[width];
+            columnLuminances = new int[width];
+            xx = new long[columns];
+            yy = new long[columns];
+            xy = new long[columns];
+            weightedRows = new long[columns];
+            luminances = new long[columns];
+        }
+
+        /**
+         * Sums the gradients and luminance of a row of sub-images.
+         * @param row The row of sub-images.
+         */
+        void sumRow(int row) {
+            Arrays.fill(xx, 0);
+            Arrays.fill(yy, 0);
+            Arrays.fill(xy, 0);
+            Arrays.fill(weightedRows, 0);
+            Arrays.fill(luminances, 0);
+            for (int start = 0; start < size; start += CHUNK_HEIGHT) {
+                for (int i = start; i < Math.min(size, start + CHUNK_HEIGHT); i++) {
+                    moveWindow(row * size + i);
+                    computeGradients();
+                    if (i == start)
+                        setColumns();
+                    else
+                        addToColumns(i - start);
+                }
+                addColumns(start);
+            }
+        }
+
+        /**
+         * Computes the vertical parts of the gradients of the middle row of the window.
+         */
+        private void computeGradients() {
+            for (int x = 0; x < width + 2; x++) {
+                smoothed[x] = above[x] + 2 * middle[x] + below[x];
+                difference[x] = below[x] - above[x];
+            }
+        }
+
+        /**
+         * Starts the sums of the columns with the middle row of the window, the first
+         * row of a chunk, so they need not be cleared first.
+         */
+        private void setColumns() {
+            // index x + 1 of the window is pixel x
+            for (int x = 0; x < width; x++) {
+                int gx = smoothed[x + 2] - smoothed[x];
+                int gy = difference[x] + 2 * difference[x + 1] + difference[x + 2];
+                columnXX[x] = gx * gx;
+                columnYY[x] = gy * gy;
+                columnXY[x] = gx * gy;
+                columnWeightedRows[x] = 0;
+                columnLuminances[x] = middle[x + 1];
+            }
+        }
+
+        /**
+         * Adds the gradients and luminance of the middle row of the window to the
+         * sums of the columns.
+         * @param weight The row in the chunk, which weights gy*gy for the position.
+         */
+        private void addToColumns(int weight) {
+            for (int x = 0; x < width; x++) {
+                int gx = smoothed[x + 2] - smoothed[x];
+                int gy = difference[x] + 2 * difference[x + 1] + difference[x + 2];
+                int vertical = gy * gy;
+                columnXX[x] += gx * gx;
+                columnYY[x] += vertical;
+                columnXY[x] += gx * gy;
+                columnWeightedRows[x] += vertical * weight;
+                columnLuminances[x] += middle[x + 1];
+            }
+        }
+
+        /**
+         * Adds the sums of the columns of a chunk into their sub-images.
+         * @param start The first row of the chunk in the sub-images.
+         */
+        private void addColumns(int start) {
+            for (int col = 0; col < columns; col++) {
+                long sumXX = 0, sumYY = 0, sumXY = 0, sumWeighted = 0, sumLuminance = 0;
+                for (int x = col * size; x < (col + 1) * size; x++) {
+                    sumXX += columnXX[x];
+                    sumYY += columnYY[x];
+                    sumXY += columnXY[x];
+                    sumWeighted += columnWeightedRows[x];
+                    sumLuminance += columnLuminances[x];
+                }
+                xx[col] += sumXX;
+                yy[col] += sumYY;
+                xy[col] += sumXY;
+                weightedRows[col] += sumWeighted + start * sumYY;
+                luminances[col] += sumLuminance;
+            }
+        }
+
+        /**
+         * Moves the window so its middle row is a given row of pixels, converting
+         * only the rows that were not in the window yet.
+         * @param y The row of pixels.
+         */
+        private void moveWindow(int y) {
+            int height = pixels.length;
+            if (y == windowRow + 1) {
+                int[] free = above;
+                above = middle;
+                middle = below;
+                below = free;
+                toLuminance(pixels[Math.min(y + 1, height - 1)], below);
+            } else {
+                toLuminance(pixels[Math.max(y - 1, 0)], above);
+                toLuminance(pixels[y], middle);
+                toLuminance(pixels[Math.min(y + 1, height - 1)], below);
+            }
+            windowRow = y;
+        }
+
+        /**
+         * Stores the edges and greyness of a sub-image of the last summed row.
+         * @param col The column of the sub-image.
+         * @param index The index of the sub-image in the grid.
+         * @param strengths Where to store the strength.
+         * @param alignmentsX Where to store the horizontal component of the alignment.
+         * @param alignmentsY Where to store the vertical component of the alignment.
+         * @param positions Where to store the position.
+         * @param greyness Where to store the greyness.
+         */
+        void store(int col, int index, double[] strengths, double[] alignmentsX, double[] alignmentsY,
+                   double[] positions, double[] greyness) {
+            double pixelCount = (double) size * size;
+            double energy = xx[col] + yy[col];
+            strengths[index] = Math.sqrt(energy / (pixelCount * MAX_GRADIENT * MAX_GRADIENT));
+            if (energy > 0) {
+                double inverse = 1 / energy;
+                alignmentsX[index] = (xx[col] - yy[col]) * inverse;
+                alignmentsY[index] = 2.0 * xy[col] * inverse;
+            }
+            positions[index] = yy[col] == 0 || size == 1 ? 0.5 :
+                    (double) weightedRows[col] / (yy[col] * (size - 1.0));
+            greyness[index] = luminances[col] / (255 * pixelCount);
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package image;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Objects;
+
+/**
+ * The greyness of tiles of sub-images of one image, by resolution, luminance and
+ * position, bounded by a number of tiles: when it is exceeded, the least recently
+ * used tiles are dropped. Safe to use from any thread.
+ * @author Daniel, Inbar
+ */
+final class TileCache {
+    private final int capacity;
+    private final LinkedHashMap<Key, GreynessGrid> tiles = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * Constructs an empty cache.
+     * @param capacity The number of tiles the cache keeps.
+     */
+    TileCache(int capacity) {
+        this.capacity = capacity;
+    }
+
+    /**
+     * Gets a tile, marking it as the most recently used.
+     * @param resolution The number of sub-images in a row of the image.
+     * @param luminance How the luminance of the pixels is measured.
+     * @param row The row of the tile.
+     * @param column The column of the tile.
+     * @return The tile, or null if it is not in the cache.
+     */
+    synchronized GreynessGrid get(int resolution, Luminance luminance, int row, int column) {
+        return tiles.get(new Key(resolution, luminance, row, column));
+    }
+
+    /**
+     * Adds a tile, dropping the least recently used tiles beyond the capacity.
+     * @param resolution The number of sub-images in a row of the image.
+     * @param luminance How the luminance of the pixels is measured.
+     * @param row The row of the tile.
+     * @param column The column of the tile.
+     * @param tile The greyness of the sub-images of the tile.
+     */
+    synchronized void put(int resolution, Luminance luminance, int row, int column, GreynessGrid tile) {
+        tiles.put(new Key(resolution, luminance, row, column), tile);
+        Iterator<GreynessGrid> eldest = tiles.values().iterator();
+        while (tiles.size() > capacity) {
+            eldest.next();
+            eldest.remove();
+        }
+    }
+
+    /**
+     * Gets the number of tiles in the cache.
+     * @return The number of tiles.
+     */
+    synchronized int size() {
+        return tiles.size();
+    }
+
+    /**
+     * Gets the number of bytes of the tiles in the cache.
+     * @return The number of bytes.
+     */
+    synchronized long getBytes() {
+        long bytes = 0;
+        for (GreynessGrid tile : tiles.values())
+            bytes += tile.getBytes();
+        return bytes;
+    }
+
+    /**
+     * The position of a tile.
+     */
+    private static final class Key {
+        private final int resolution;
+        private final Luminance luminance;
+        private final int row;
+        private final int column;
+
+        /**
+         * constructor
+         * @param resolution The number of sub-images in a row of the image.
+         * @param luminance How the luminance of the pixels is measured.
+         * @param row The row of the tile.
+         * @param column The column of the tile.
+         */
+        Key(int resolution, Luminance luminance, int row, int column) {
+            this.resolution = resolution;
+            this.luminance = luminance;
+            this.row = row;
+            this.column = column;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (this == other)
+                return true;
+            if (!(other instanceof Key))
+                return false;
+            Key key = (Key) other;
+            return resolution == key.resolution && luminance == key.luminance && row == key.row &&
+                    column == key.column;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(resolution, luminance, row, column);
+        }
+    }
+}
@@ -1,5 +1,9 @@
 package image_char_matching;
 
+import metrics.Metrics;
+import metrics.Stage;
+import metrics.StageTimer;
+
 import java.awt.*;
 import java.awt.image.BufferedImage;
 
@@ -14,7 +18,10 @@ import java.awt.image.BufferedImage;
 public class CharConverter {
     private static final double X_OFFSET_FACTOR = 0.2;
     private static final double Y_OFFSET_FACTOR = 0.75;
-    private static final String FONT_NAME = "Courier New";
+    /**
+     * the font the glyphs are rendered in
+     */
+    static final String FONT_NAME = "Courier New";
 
     /**
      * pixel resolution
@@ -23,16 +30,32 @@ public class CharConverter {
 
     /**
      * Renders a given character, according to how it looks in the font specified in the
-     * constructor, to a square black&white image (2D array of booleans),
-     * whose dimension in pixels is specified.
+     * constructor, to a square black&white image (2D array of booleans, true for the white
+     * background and false where the char is drawn), whose dimension in pixels is specified.
+     * The printable ASCII chars are taken from the glyph table generated at build time,
+     * other chars are rasterized with AWT.
      * @param c eke
      */
     public static boolean[][] convertToBoolArray(char c) {
+        StageTimer timer = Metrics.start(Stage.GLYPH);
+        boolean[][] matrix = GlyphTable.standard().bitmap(c);
+        if (matrix == null)
+            matrix = rasterize(c);
+        Metrics.stop(timer, DEFAULT_PIXEL_RESOLUTION * DEFAULT_PIXEL_RESOLUTION);
+        return matrix;
+    }
+
+    /**
+     * Rasterizes a given character with AWT, see convertToBoolArray.
+     * @param c The character.
+     * @return The glyph.
+     */
+    static boolean[][] rasterize(char c) {
         BufferedImage img = getBufferedImage(c, FONT_NAME, DEFAULT_PIXEL_RESOLUTION);
         boolean[][] matrix = new boolean[DEFAULT_PIXEL_RESOLUTION][DEFAULT_PIXEL_RESOLUTION];
         for(int y = 0 ; y < DEFAULT_PIXEL_RESOLUTION ; y++) {
             for(int x = 0 ; x < DEFAULT_PIXEL_RESOLUTION ; x++) {
-                matrix[y][x] = img.getRGB(x, y) == 0; //is the color black
+                matrix[y][x] = img.getRGB(x, y) == 0; // the transparent background, which the char left untouched
             }
         }
         return matrix;
@@ -0,0 +1,49 @@
+package image_char_matching;
+
+/**
+ * Matches a sub-image with a strong straight edge to the char drawn along that
+ * edge: '|', '/', '-', '\' or '_' for a horizontal edge low in the sub-image.
+ * Sub-images without such an edge are left to the brightness matching.
+ * @author Daniel, Inbar
+ */
+public class EdgeCharMatcher {
+    /** returned for sub-images that have no strong straight edge */
+    public static final char NO_EDGE = '\0';
+    // edges weaker than this are shading, not outlines
+    private static final double MIN_STRENGTH = 0.08;
+    // below this the gradients point in too many directions for one line to stand for them
+    private static final double MIN_COHERENCE = 0.5;
+    // horizontal edges whose centroid is below this are drawn as '_'
+    private static final double LOW_POSITION = 0.65;
+
+    /**
+     * Not instantiable.
+     */
+    private EdgeCharMatcher() {
+    }
+
+    /**
+     * Finds the directional char of an edge.
+     * The orientation of the gradients is given as their alignment, the vector at twice
+     * their angle whose length is their coherence (see image.EdgeGrid), so the eighths
+     * of a turn that separate the chars are where its components are equal.
+     * @param strength The strength of the edges of the sub-image, between 0 and 1.
+     * @param alignmentX The horizontal component of the alignment of its gradients.
+     * @param alignmentY The vertical component, positive when the gradients turn
+     *                   towards the bottom of the image.
+     * @param position The vertical centroid of its edges, 0 at the top and 1 at the bottom.
+     * @return The char, or NO_EDGE if the sub-image has no strong straight edge.
+     */
+    public static char getCharByEdge(double strength, double alignmentX, double alignmentY,
+                                     double position) {
+        if (strength < MIN_STRENGTH ||
+                alignmentX * alignmentX + alignmentY * alignmentY < MIN_COHERENCE * MIN_COHERENCE)
+            return NO_EDGE;
+        // the edge is perpendicular to the gradient
+        if (Math.abs(alignmentY) < alignmentX)
+            return '|';
+        if (Math.abs(alignmentY) < -alignmentX)
+            return position > LOW_POSITION ? '_' : '-';
+        return alignmentY > 0 ? '/' : '\\';
+    }
+}
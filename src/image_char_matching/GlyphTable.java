@@ -0,0 +1,151 @@
+package image_char_matching;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * The glyphs of the printable ASCII chars, rendered at build time by
+ * GlyphTableGenerator into a resource next to this class, so that looking them
+ * up at runtime needs no fonts and no AWT.
+ * The resource is read with a single bulk read when the class is first used.
+ * If it is missing or was generated with other settings, the table is empty and
+ * every char falls back to being rasterized by CharConverter.
+ * Resource layout, big-endian: magic, version, font name, pixel resolution,
+ * number of glyphs, then for each glyph in ascending char order the char, the
+ * number of background pixels and the pixels, one bit each (set for the background,
+ * which is white, as in CharConverter.convertToBoolArray), row by row.
+ * @author Daniel, Inbar
+ */
+final class GlyphTable {
+    /** the name of the resource, relative to this class */
+    static final String RESOURCE = "glyphs.bin";
+    /** the first bytes of the resource, "GLYF" */
+    static final int MAGIC = 0x474C5946;
+    /** the version of the layout */
+    static final short VERSION = 1;
+
+    private static final GlyphTable STANDARD = load();
+
+    private final char[] chars;
+    private final int[] coverages;
+    private final byte[][] bitmaps;
+    private final int resolution;
+
+    /**
+     * constructor
+     * @param chars The chars in the table, in ascending order.
+     * @param coverages The number of background pixels of each char.
+     * @param bitmaps The packed pixels of each char.
+     * @param resolution The side of a glyph in pixels.
+     */
+    private GlyphTable(char[] chars, int[] coverages, byte[][] bitmaps, int resolution) {
+        this.chars = chars;
+        this.coverages = coverages;
+        this.bitmaps = bitmaps;
+        this.resolution = resolution;
+    }
+
+    /**
+     * Gets the table generated at build time.
+     * @return The table, empty if the resource is not available.
+     */
+    static GlyphTable standard() {
+        return STANDARD;
+    }
+
+    /**
+     * Gets the number of chars in the table.
+     * @return The number of chars.
+     */
+    int size() {
+        return chars.length;
+    }
+
+    /**
+     * Gets the number of background pixels in the glyph of a char, those the char leaves
+     * white, which makes its brightness.
+     * @param c The char.
+     * @return The number of background pixels, or -1 if the char is not in the table.
+     */
+    int coverage(char c) {
+        int index = Arrays.binarySearch(chars, c);
+        return index < 0 ? -1 : coverages[index];
+    }
+
+    /**
+     * Gets the glyph of a char as a new 2D array of booleans, true for the background (white).
+     * @param c The char.
+     * @return The glyph, or null if the char is not in the table.
+     */
+    boolean[][] bitmap(char c) {
+        int index = Arrays.binarySearch(chars, c);
+        if (index < 0)
+            return null;
+        byte[] packed = bitmaps[index];
+        boolean[][] matrix = new boolean[resolution][resolution];
+        for (int y = 0; y < resolution; y++) {
+            for (int x = 0; x < resolution; x++) {
+                int bit = y * resolution + x;
+                matrix[y][x] = (packed[bit >> 3] & (0x80 >>> (bit & 7))) != 0;
+            }
+        }
+        return matrix;
+    }
+
+    /**
+     * Packs a glyph into bytes, one bit per pixel, the way it is stored in the resource.
+     * @param matrix The glyph.
+     * @return The packed pixels.
+     */
+    static byte[] pack(boolean[][] matrix) {
+        int resolution = matrix.length;
+        byte[] packed = new byte[(resolution * resolution + 7) / 8];
+        for (int y = 0; y < resolution; y++) {
+            for (int x = 0; x < resolution; x++) {
+                int bit = y * resolution + x;
+                if (matrix[y][x])
+                    packed[bit >> 3] |= (byte) (0x80 >>> (bit & 7));
+            }
+        }
+        return packed;
+    }
+
+    /**
+     * Loads the table from the resource.
+     * @return The table, empty if the resource is missing, broken or stale.
+     */
+    private static GlyphTable load() {
+        GlyphTable empty = new GlyphTable(new char[0], new int[0], new byte[0][], 0);
+        byte[] bytes;
+        try (InputStream in = GlyphTable.class.getResourceAsStream(RESOURCE)) {
+            if (in == null)
+                return empty;
+            bytes = in.readAllBytes();
+        } catch (IOException e) {
+            return empty;
+        }
+        try (DataInputStream data = new DataInputStream(new ByteArrayInputStream(bytes))) {
+            if (data.readInt() != MAGIC || data.readShort() != VERSION ||
+                    !data.readUTF().equals(CharConverter.FONT_NAME) ||
+                    data.readShort() != CharConverter.DEFAULT_PIXEL_RESOLUTION)
+                return empty;
+            int resolution = CharConverter.DEFAULT_PIXEL_RESOLUTION;
+            int count = data.readInt();
+            char[] chars = new char[count];
+            int[] coverages = new int[count];
+            byte[][] bitmaps = new byte[count][(resolution * resolution + 7) / 8];
+            for (int i = 0; i < count; i++) {
+                chars[i] = data.readChar();
+                coverages[i] = data.readShort();
+                data.readFully(bitmaps[i]);
+            }
+            return new GlyphTable(chars, coverages, bitmaps, resolution);
+        } catch (IOException e) {
+            // truncated
+            return empty;
+        }
+    }
+}
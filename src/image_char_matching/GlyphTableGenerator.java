@@ -0,0 +1,59 @@
+package image_char_matching;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Renders the glyphs of the printable ASCII chars with AWT and writes them as
+ * the resource GlyphTable loads. It runs at build time, after compilation, with
+ * the output path of the resource as its argument, e.g.
+ * java -Djava.awt.headless=true image_char_matching.GlyphTableGenerator
+ *      out/image_char_matching/glyphs.bin
+ * @author Daniel, Inbar
+ */
+public class GlyphTableGenerator {
+    private static final char FIRST_CHAR = 32;
+    private static final char LAST_CHAR = 126;
+
+    /**
+     * Generates the resource.
+     * @param args The path of the resource to write.
+     * @throws IOException If the resource could not be written.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1) {
+            System.err.println("Usage: GlyphTableGenerator <output file>");
+            System.exit(1);
+        }
+        Path output = Path.of(args[0]);
+        if (output.getParent() != null)
+            Files.createDirectories(output.getParent());
+        int resolution = CharConverter.DEFAULT_PIXEL_RESOLUTION;
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(output.toFile())))) {
+            out.writeInt(GlyphTable.MAGIC);
+            out.writeShort(GlyphTable.VERSION);
+            out.writeUTF(CharConverter.FONT_NAME);
+            out.writeShort(resolution);
+            out.writeInt(LAST_CHAR - FIRST_CHAR + 1);
+            for (char c = FIRST_CHAR; c <= LAST_CHAR; c++) {
+                boolean[][] matrix = CharConverter.rasterize(c);
+                int coverage = 0;
+                for (boolean[] row : matrix) {
+                    for (boolean pixel : row) {
+                        if (pixel)
+                            coverage++;
+                    }
+                }
+                out.writeChar(c);
+                out.writeShort(coverage);
+                out.write(GlyphTable.pack(matrix));
+            }
+        }
+        System.out.println("Wrote " + (LAST_CHAR - FIRST_CHAR + 1) + " glyphs to " + output);
+    }
+}
@@ -5,19 +5,25 @@ import java.util.ArrayList;
 import java.util.Map;
 import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * This class matches an ASCII character to a sub-image with a given brightness.
  * It uses brightness values to find the closest character from a provided character set.
  * This class is intended for use in an ASCII art algorithm to replace sub-images with characters.
+ * A matcher shared between threads must not change: readOnlyCopy gives one whose
+ * character set cannot be changed, and that shares nothing with the matcher it copies.
  * @author inbar, daniel
  */
 public class SubImgCharMatcher {
-    private final int PIXEL_NUMBER = 16 * 16;
+    private static final int PIXEL_NUMBER = 16 * 16;
+    // the brightness of a char never changes, so it is rendered once for all matchers
+    private static final Map<Character, Double> BRIGHTNESS_CACHE = new ConcurrentHashMap<>();
     private TreeMap<Double, TreeSet<Character>> charset;
     private TreeMap<Double, TreeSet<Character>> normalizedCharset;
     private double maxBrightness;
     private double minBrightness;
+    private final boolean readOnly;
 
     /**
      * Constructs a SubImgCharMatcher object with the given character set.
@@ -25,6 +31,7 @@ public class SubImgCharMatcher {
      * @param charset An array of characters to use as the character set.
      */
     public SubImgCharMatcher(char[] charset) {
+        this.readOnly = false;
         this.charset = new TreeMap<>();
         double currBrightness;
         minBrightness = 2;
@@ -41,6 +48,29 @@ public class SubImgCharMatcher {
         normalizeArray();
     }
 
+    /**
+     * Constructs a read-only copy of a matcher.
+     *
+     * @param matcher The matcher to copy.
+     */
+    private SubImgCharMatcher(SubImgCharMatcher matcher) {
+        this.readOnly = true;
+        this.charset = copyOf(matcher.charset);
+        this.normalizedCharset = copyOf(matcher.normalizedCharset);
+        this.minBrightness = matcher.minBrightness;
+        this.maxBrightness = matcher.maxBrightness;
+    }
+
+    /**
+     * Copies the matcher into one that can be shared between threads, e.g. by a cache
+     * of matchers: it matches like this one, and addChar and removeChar throw.
+     *
+     * @return The read-only copy.
+     */
+    public SubImgCharMatcher readOnlyCopy() {
+        return new SubImgCharMatcher(this);
+    }
+
     /**
      * Finds the character with the brightness closest to the given brightness value.
      *
@@ -63,12 +93,43 @@ public class SubImgCharMatcher {
         return set.first(); // TreeSet maintains natural ordering, first element will be the minimum
     }
 
+    /**
+     * Gets the distinct normalized brightness values of the character set, in
+     * increasing order, e.g. to quantize many values with a binary search.
+     *
+     * @return A new array of the values, between 0 and 1.
+     */
+    public double[] getNormalizedBrightnesses() {
+        double[] levels = new double[normalizedCharset.size()];
+        int i = 0;
+        for (double level : normalizedCharset.keySet()) {
+            levels[i++] = level;
+        }
+        return levels;
+    }
+
+    /**
+     * Gets the char getCharByImageBrightness matches to each of the values of
+     * getNormalizedBrightnesses, in the same order.
+     *
+     * @return A new array of the chars.
+     */
+    public char[] getCharsByNormalizedBrightness() {
+        char[] chars = new char[normalizedCharset.size()];
+        int i = 0;
+        for (TreeSet<Character> set : normalizedCharset.values()) {
+            chars[i++] = set.first();
+        }
+        return chars;
+    }
+
     /**
      * Adds a character to the character set.
      *
      * @param c The character to add.
      */
     public void addChar(char c) {
+        checkWritable();
         double brightness = calculateBrightness(c);
         // check if there is a set of this brightness already
         if (!charset.containsKey(brightness))
@@ -93,6 +154,7 @@ public class SubImgCharMatcher {
      * @param c The character to remove.
      */
     public void removeChar(char c) {
+        checkWritable();
         double brightness = calculateBrightness(c);
         double newBrightness = (brightness - minBrightness) / (maxBrightness - minBrightness);
         TreeSet<Character> set = charset.get(brightness);
@@ -118,6 +180,30 @@ public class SubImgCharMatcher {
         }
     }
 
+    /**
+     * Checks that the character set may be changed.
+     *
+     * @throws UnsupportedOperationException If the matcher is a read-only copy.
+     */
+    private void checkWritable() {
+        if (readOnly)
+            throw new UnsupportedOperationException("A read-only matcher cannot be changed.");
+    }
+
+    /**
+     * Copies a character set by brightness, with copies of its sets of characters.
+     *
+     * @param charset The character set.
+     * @return The copy.
+     */
+    private static TreeMap<Double, TreeSet<Character>> copyOf(TreeMap<Double, TreeSet<Character>> charset) {
+        TreeMap<Double, TreeSet<Character>> copy = new TreeMap<>();
+        for (Map.Entry<Double, TreeSet<Character>> entry : charset.entrySet()) {
+            copy.put(entry.getKey(), new TreeSet<>(entry.getValue()));
+        }
+        return copy;
+    }
+
     /**
      * Normalizes the brightness values in the character set to a range of 0 to 1.
      */
@@ -146,13 +232,26 @@ public class SubImgCharMatcher {
         }
     }
 
+    /**
+     * Gets the brightness of a given character, calculating it on first use.
+     *
+     * @param c The character to get the brightness of.
+     * @return The brightness value of the character.
+     */
+    private static double calculateBrightness(char c) {
+        return BRIGHTNESS_CACHE.computeIfAbsent(c, SubImgCharMatcher::renderBrightness);
+    }
+
     /**
      * Calculates the brightness of a given character.
      *
      * @param c The character to calculate the brightness for.
      * @return The brightness value of the character.
      */
-    private double calculateBrightness(char c) {
+    private static double renderBrightness(char c) {
+        int coverage = GlyphTable.standard().coverage(c);
+        if (coverage >= 0)
+            return (double) coverage / PIXEL_NUMBER;
         boolean[][] boolArray = CharConverter.convertToBoolArray(c);
         double countTrue = 0;
 
@@ -0,0 +1,138 @@
+package metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Per-stage latency histograms, byte counts and allocated bytes of rendering
+ * ASCII art, also emitted as JFR events.
+ * Metrics are enabled with the system property ascii.metrics=true. When they are
+ * disabled, start returns null and stop returns at once, and since ENABLED is a
+ * constant the JIT removes the measuring code altogether.
+ * <pre>
+ *     StageTimer timer = Metrics.start(Stage.DECODE);
+ *     ... the stage ...
+ *     Metrics.stop(timer, bytes);
+ * </pre>
+ * @author Daniel, Inbar
+ */
+public final class Metrics {
+    /** whether metrics are recorded */
+    public static final boolean ENABLED = Boolean.getBoolean("ascii.metrics");
+
+    private static final double NANOS_PER_MILLI = 1_000_000.0;
+    private static final double MEDIAN = 50;
+    private static final double HIGH_PERCENTILE = 99;
+    private static final Stage[] STAGES = Stage.values();
+    private static final LatencyHistogram[] LATENCIES = new LatencyHistogram[STAGES.length];
+    private static final LongAdder[] BYTES = new LongAdder[STAGES.length];
+    private static final LongAdder[] ALLOCATED = new LongAdder[STAGES.length];
+    private static final com.sun.management.ThreadMXBean THREADS = allocationCounter();
+
+    static {
+        for (int i = 0; i < STAGES.length; i++) {
+            LATENCIES[i] = new LatencyHistogram();
+            BYTES[i] = new LongAdder();
+            ALLOCATED[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Not instantiable.
+     */
+    private Metrics() {
+    }
+
+    /**
+     * Starts measuring a stage on the current thread.
+     * @param stage The stage.
+     * @return The timer to stop, or null if metrics are disabled.
+     */
+    public static StageTimer start(Stage stage) {
+        if (!ENABLED)
+            return null;
+        return new StageTimer(stage);
+    }
+
+    /**
+     * Stops measuring a stage, on the thread that started it.
+     * @param timer The timer returned by start, may be null.
+     * @param bytes The number of bytes the stage produced or consumed.
+     */
+    public static void stop(StageTimer timer, long bytes) {
+        if (timer == null)
+            return;
+        timer.stop(bytes);
+    }
+
+    /**
+     * Builds a report of the p50 and p99 latency of each stage that ran.
+     * @return The report.
+     */
+    public static String report() {
+        if (!ENABLED)
+            return "Metrics are disabled, run with -Dascii.metrics=true to record them." +
+                    System.lineSeparator();
+        StringBuilder report = new StringBuilder(String.format("%-10s %8s %12s %12s %14s %14s%n",
+                "stage", "count", "p50 (ms)", "p99 (ms)", "bytes", "allocated"));
+        for (int i = 0; i < STAGES.length; i++) {
+            long count = LATENCIES[i].getCount();
+            if (count == 0)
+                continue;
+            report.append(String.format("%-10s %8d %12.3f %12.3f %14d %14d%n", STAGES[i].getLabel(),
+                    count, LATENCIES[i].getPercentile(MEDIAN) / NANOS_PER_MILLI,
+                    LATENCIES[i].getPercentile(HIGH_PERCENTILE) / NANOS_PER_MILLI,
+                    BYTES[i].sum(), ALLOCATED[i].sum()));
+        }
+        return report.toString();
+    }
+
+    /**
+     * Clears all the recorded metrics.
+     */
+    public static void reset() {
+        for (int i = 0; i < STAGES.length; i++) {
+            LATENCIES[i].reset();
+            BYTES[i].reset();
+            ALLOCATED[i].reset();
+        }
+    }
+
+    /**
+     * Records one run of a stage.
+     * @param stage The stage.
+     * @param nanos The latency, in nanoseconds.
+     * @param bytes The number of bytes the stage produced or consumed.
+     * @param allocated The number of bytes allocated by the stage.
+     */
+    static void record(Stage stage, long nanos, long bytes, long allocated) {
+        LATENCIES[stage.ordinal()].record(nanos);
+        BYTES[stage.ordinal()].add(bytes);
+        ALLOCATED[stage.ordinal()].add(allocated);
+    }
+
+    /**
+     * Gets the number of bytes allocated so far by the current thread.
+     * @return The number of bytes, or 0 if the JVM does not count them.
+     */
+    static long allocatedBytes() {
+        if (THREADS == null)
+            return 0;
+        return THREADS.getCurrentThreadAllocatedBytes();
+    }
+
+    /**
+     * Gets the bean that counts the bytes allocated by threads, if the JVM has one.
+     * @return The bean, or null if allocations are not counted.
+     */
+    private static com.sun.management.ThreadMXBean allocationCounter() {
+        if (!ENABLED || !(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean))
+            return null;
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        if (!threads.isThreadAllocatedMemorySupported())
+            return null;
+        threads.setThreadAllocatedMemoryEnabled(true);
+        return threads;
+    }
+}
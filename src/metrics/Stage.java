@@ -0,0 +1,40 @@
+package metrics;
+
+/**
+ * The stages of rendering an image as ASCII art that are measured.
+ * @author Daniel, Inbar
+ */
+public enum Stage {
+    /** decoding an image file into pixels, in Image */
+    DECODE("decode"),
+    /** padding the image to power of two dimensions, in ImageRenderer */
+    PADDING("padding"),
+    /** dividing the padded image into blocks and computing their greyness, in ImageRenderer */
+    DIVIDE("divide"),
+    /** the Sobel pass over the luminance of the padded image for edge mode, in ImageRenderer */
+    EDGE("edge"),
+    /** getting the glyphs of chars, from the glyph table or rasterized, in CharConverter */
+    GLYPH("glyph"),
+    /** matching the blocks of a resolution to chars, with SubImgCharMatcher */
+    MATCHING("matching"),
+    /** writing the ASCII art, in the AsciiOutput implementations */
+    OUTPUT("output");
+
+    private final String label;
+
+    /**
+     * constructor
+     * @param label The name of the stage in reports.
+     */
+    Stage(String label) {
+        this.label = label;
+    }
+
+    /**
+     * Gets the name of the stage in reports.
+     * @return The name.
+     */
+    public String getLabel() {
+        return label;
+    }
+}
@@ -0,0 +1,41 @@
+package metrics;
+
+/**
+ * Measures one run of a stage, from Metrics.start until Metrics.stop.
+ * @author Daniel, Inbar
+ */
+public final class StageTimer {
+    private final Stage stage;
+    private final long startNanos;
+    private final long startAllocated;
+    private final StageEvent event;
+
+    /**
+     * Starts measuring a stage on the current thread.
+     * @param stage The stage.
+     */
+    StageTimer(Stage stage) {
+        this.stage = stage;
+        this.event = new StageEvent();
+        event.begin();
+        this.startAllocated = Metrics.allocatedBytes();
+        this.startNanos = System.nanoTime();
+    }
+
+    /**
+     * Stops measuring, recording the stage.
+     * @param bytes The number of bytes the stage produced or consumed.
+     */
+    void stop(long bytes) {
+        long nanos = System.nanoTime() - startNanos;
+        long allocated = Metrics.allocatedBytes() - startAllocated;
+        Metrics.record(stage, nanos, bytes, allocated);
+        event.end();
+        if (event.shouldCommit()) {
+            event.stage = stage.getLabel();
+            event.bytes = bytes;
+            event.allocated = allocated;
+            event.commit();
+        }
+    }
+}